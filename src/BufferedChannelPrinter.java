@@ -0,0 +1,301 @@
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A printer that writes shapes, one per line in the same form as {@link Printer}, to a {@link WritableByteChannel}
+ * from a background thread. {@link #print} only places the shape on a bounded queue, so a caller that outruns the
+ * channel is slowed down to its pace instead of buffering without limit. The background thread takes shapes off the
+ * queue in batches, formats them into one reusable character buffer, and writes them out in large blocks.
+ *
+ * Shapes are formatted when the background thread gets to them, so a shape must not be moved between being printed and
+ * the next {@link #flush()}. Output is only guaranteed to have reached the channel after {@link #flush()} or
+ * {@link #close()} returns. If formatting a shape or writing to the channel fails, the failure is reported by the next
+ * call to {@link #print}, {@link #flush()} or {@link #close()}, and nothing more is written.
+ */
+public class BufferedChannelPrinter extends AbstractPrinter<TwoDShape> implements Closeable {
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 8192;
+    private static final int DEFAULT_BUFFER_SIZE    = 1 << 16;
+
+    /** A queue marker asking the background thread to write out everything before it. */
+    private static final class FlushRequest {
+        final CountDownLatch done = new CountDownLatch(1);
+        final boolean        last;
+
+        FlushRequest(boolean last) {
+            this.last = last;
+        }
+    }
+
+    private final WritableByteChannel   channel;
+    private final BlockingQueue<Object> queue;
+    private final Thread                writer;
+
+    private final StringBuilder  text = new StringBuilder();
+    private final ByteBuffer     bytes;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+    private volatile IOException failure;
+    private final AtomicBoolean  closed = new AtomicBoolean();
+    // Held shared while queueing, and exclusively by close, so that nothing is queued after the last flush request
+    private final ReadWriteLock  queueing = new ReentrantReadWriteLock();
+
+    private final LongAdder shapesQueued   = new LongAdder();
+    private final LongAdder shapesWritten  = new LongAdder();
+    private final LongAdder bytesWritten   = new LongAdder();
+    private final LongAdder channelWrites  = new LongAdder();
+    private final LongAdder producerStalls = new LongAdder();
+
+    public BufferedChannelPrinter(WritableByteChannel channel) {
+        this(channel, DEFAULT_QUEUE_CAPACITY, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param channel       the channel to write to, which is closed by {@link #close()}
+     * @param queueCapacity the number of shapes that may be waiting to be written before {@link #print} blocks
+     * @param bufferSize    the size in bytes of the blocks written to the channel
+     */
+    public BufferedChannelPrinter(WritableByteChannel channel, int queueCapacity, int bufferSize) {
+        if (queueCapacity < 1 || bufferSize < 16)
+            throw new IllegalArgumentException();
+        this.channel = channel;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.bytes = ByteBuffer.allocateDirect(bufferSize);
+        this.writer = new Thread(this::drain, "BufferedChannelPrinter-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * @return a printer appending to the specified file, which is created if it does not exist
+     * @throws IOException if the file cannot be opened
+     */
+    public static BufferedChannelPrinter toFile(Path path) throws IOException {
+        return new BufferedChannelPrinter(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                           StandardOpenOption.APPEND));
+    }
+
+    /**
+     * @return a printer writing to standard output; closing it closes the standard output stream
+     */
+    public static BufferedChannelPrinter toStandardOutput() {
+        return new BufferedChannelPrinter(Channels.newChannel(new FileOutputStream(FileDescriptor.out)));
+    }
+
+    /**
+     * Queues a shape to be written, blocking while the queue is full.
+     *
+     * @throws IllegalStateException if this printer has been closed
+     * @throws UncheckedIOException  if formatting an earlier shape or writing to the channel failed
+     */
+    @Override
+    void print(TwoDShape s) {
+        queueing.readLock().lock();
+        try {
+            checkUsable();
+            enqueue(s);
+        } finally {
+            queueing.readLock().unlock();
+        }
+        shapesQueued.increment();
+    }
+
+    /**
+     * Blocks until every shape printed so far has been written to the channel.
+     *
+     * @throws IllegalStateException if this printer has been closed
+     * @throws IOException           if formatting a shape or writing to the channel failed
+     */
+    public void flush() throws IOException {
+        FlushRequest request = new FlushRequest(false);
+        queueing.readLock().lock();
+        try {
+            checkUsable();
+            enqueue(request);
+        } finally {
+            queueing.readLock().unlock();
+        }
+        await(request);
+    }
+
+    /**
+     * Writes out every shape printed so far, stops the background thread and closes the channel. Closing a printer
+     * that is already closed has no effect. Shapes printed concurrently with the close are either written before it
+     * completes or rejected with an {@link IllegalStateException}.
+     *
+     * @throws IOException if formatting a shape, or writing to or closing the channel, failed
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed.compareAndSet(false, true))
+            return;
+        FlushRequest request = new FlushRequest(true);
+        // Wait for every print that saw the printer open to finish queueing, so that the last request comes after it
+        queueing.writeLock().lock();
+        try {
+            enqueue(request);
+        } finally {
+            queueing.writeLock().unlock();
+        }
+        try {
+            await(request);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /** @return the number of shapes passed to {@link #print} */
+    public long shapesQueued() { return shapesQueued.sum(); }
+
+    /** @return the number of shapes formatted and handed to the channel */
+    public long shapesWritten() { return shapesWritten.sum(); }
+
+    /** @return the number of bytes written to the channel */
+    public long bytesWritten() { return bytesWritten.sum(); }
+
+    /** @return the number of write calls made on the channel */
+    public long channelWrites() { return channelWrites.sum(); }
+
+    /** @return the number of times {@link #print} had to wait because the queue was full */
+    public long producerStalls() { return producerStalls.sum(); }
+
+    private void checkUsable() {
+        if (closed.get())
+            throw new IllegalStateException("Printer is closed");
+        if (failure != null)
+            throw new UncheckedIOException(failure);
+    }
+
+    private void enqueue(Object item) {
+        if (queue.offer(item))
+            return;
+        producerStalls.increment();
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for queue space", e);
+        }
+    }
+
+    private void await(FlushRequest request) throws IOException {
+        try {
+            request.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for flush", e);
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * Body of the background thread: takes batches off the queue and writes them until asked to stop. Anything thrown
+     * while formatting or writing is recorded as the failure rather than ending the thread, so that every flush
+     * request, including those queued later, is still released.
+     */
+    private void drain() {
+        List<Object> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+
+            for (Object item : batch) {
+                if (item instanceof FlushRequest) {
+                    FlushRequest request = (FlushRequest) item;
+                    try {
+                        writeText();
+                        writeBytes();
+                    } catch (Throwable t) {
+                        fail(t);
+                    }
+                    request.done.countDown();
+                    if (request.last)
+                        return;
+                } else if (failure == null) {
+                    try {
+                        text.append(item).append(System.lineSeparator());
+                        shapesWritten.increment();
+                        if (text.length() >= bytes.capacity())
+                            writeText();
+                    } catch (Throwable t) {
+                        fail(t);
+                    }
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Records the first failure of the background thread, and discards the text not yet written.
+     */
+    private void fail(Throwable t) {
+        if (failure == null)
+            failure = t instanceof IOException ? (IOException) t : new IOException("Failed to write shapes", t);
+        text.setLength(0);
+        bytes.clear();
+    }
+
+    /**
+     * Encodes the pending text into the byte buffer, writing the buffer out whenever it fills up.
+     */
+    private void writeText() {
+        if (failure != null) {
+            text.setLength(0);
+            return;
+        }
+        CharBuffer chars = CharBuffer.wrap(text);
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, true);
+            if (result.isOverflow()) {
+                writeBytes();
+                if (failure != null)
+                    break;
+            } else {
+                break;
+            }
+        }
+        encoder.reset();
+        text.setLength(0);
+    }
+
+    private void writeBytes() {
+        bytes.flip();
+        try {
+            while (failure == null && bytes.hasRemaining()) {
+                bytesWritten.add(channel.write(bytes));
+                channelWrites.increment();
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+        bytes.clear();
+    }
+}
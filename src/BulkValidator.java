@@ -0,0 +1,115 @@
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Validates large batches of candidate triangles and quadrilaterals given as one primitive coordinate array, without
+ * building points or lists for each candidate. Every candidate goes through the same primitive rule kernels that back
+ * {@link Triangle#isMember} and {@link Quadrilateral#isMember}, so the accept and reject decisions are the same by
+ * construction.
+ *
+ * The result is built one 64-bit word at a time, 64 candidates to a word, and the words are split across a fork/join
+ * pool. Since every task owns a disjoint range of words, no two threads ever write to the same word.
+ */
+public class BulkValidator {
+
+    /** Number of words (of 64 candidates each) below which a task validates its range itself. */
+    private static final int THRESHOLD = 256;
+
+    private BulkValidator() {
+    }
+
+    /**
+     * @param coordinates the candidates as <code>{x1, y1, x2, y2, x3, y3, ...}</code>, six values per triangle
+     * @return a bit set in which bit <code>i</code> is set if and only if candidate <code>i</code> is a valid triangle
+     * @throws IllegalArgumentException if the length of the array is not a multiple of six
+     */
+    public static BitSet validateTriangles(double[] coordinates) {
+        return validate(coordinates, 3, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param coordinates the candidates as <code>{x1, y1, x2, y2, x3, y3, x4, y4, ...}</code>, eight values per
+     *                    quadrilateral
+     * @return a bit set in which bit <code>i</code> is set if and only if candidate <code>i</code> is a valid
+     * quadrilateral
+     * @throws IllegalArgumentException if the length of the array is not a multiple of eight
+     */
+    public static BitSet validateQuadrilaterals(double[] coordinates) {
+        return validate(coordinates, 4, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Validates candidates of the specified number of vertices, three or four, using the specified fork/join pool.
+     *
+     * @return a bit set in which bit <code>i</code> is set if and only if candidate <code>i</code> is valid
+     * @throws IllegalArgumentException if the number of vertices is not three or four, or the length of the array is
+     *                                  not a multiple of twice the number of vertices
+     */
+    public static BitSet validate(double[] coordinates, int vertices, ForkJoinPool pool) {
+        if ((vertices != 3 && vertices != 4) || coordinates.length % (2 * vertices) != 0)
+            throw new IllegalArgumentException();
+        int n = coordinates.length / (2 * vertices);
+        long[] words = new long[(n + 63) / 64];
+        if (words.length <= THRESHOLD)
+            validateWords(coordinates, vertices, n, words, 0, words.length);
+        else
+            pool.invoke(new ValidateTask(coordinates, vertices, n, words, 0, words.length));
+        return BitSet.valueOf(words);
+    }
+
+    private static final class ValidateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] coordinates;
+        private final int      vertices, n;
+        private final long[]   words;
+        private final int      from, to;
+
+        ValidateTask(double[] coordinates, int vertices, int n, long[] words, int from, int to) {
+            this.coordinates = coordinates;
+            this.vertices = vertices;
+            this.n = n;
+            this.words = words;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                validateWords(coordinates, vertices, n, words, from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ValidateTask(coordinates, vertices, n, words, from, mid),
+                      new ValidateTask(coordinates, vertices, n, words, mid, to));
+        }
+    }
+
+    /**
+     * Fills the words <code>[from, to)</code> of the result on the calling thread.
+     */
+    private static void validateWords(double[] coordinates, int vertices, int n, long[] words, int from, int to) {
+        for (int w = from; w < to; w++) {
+            long word = 0;
+            int end = Math.min(n, 64 * w + 64);
+            for (int i = 64 * w; i < end; i++) {
+                boolean valid;
+                if (vertices == 3) {
+                    int p = 6 * i;
+                    valid = Triangle.isMember(coordinates[p], coordinates[p + 1], coordinates[p + 2],
+                                              coordinates[p + 3], coordinates[p + 4], coordinates[p + 5]);
+                } else {
+                    int p = 8 * i;
+                    valid = Quadrilateral.isMember(coordinates[p], coordinates[p + 1], coordinates[p + 2],
+                                                   coordinates[p + 3], coordinates[p + 4], coordinates[p + 5],
+                                                   coordinates[p + 6], coordinates[p + 7]);
+                }
+                if (valid)
+                    word |= 1L << i;    // shifts only use the low six bits of i
+            }
+            words[w] = word;
+        }
+    }
+}
@@ -1,16 +1,22 @@
 import java.util.List;
 import java.util.Collections;
 
-public class Circle implements TwoDShape {
+public class Circle implements CircularShape {
 
     private TwoDPoint center;
     private double    radius;
 
+    // Memoized metrics; the radius never changes, so only the bounding box needs invalidating on a move
+    private double   cachedArea      = Double.NaN;
+    private double   cachedPerimeter = Double.NaN;
+    private double[] cachedBoundingBox;
+
     public Circle(double x, double y, double r) {
         this.center = new TwoDPoint(x, y);
         this.radius = r;
     }
 
+    @Override
     public double getRadius() { return radius; }
 
     /**
@@ -21,12 +27,14 @@ public class Circle implements TwoDShape {
      */
     @Override
     public void setPosition(List<? extends Point> points) {
+        ShapeMetrics.SetPositionEvent event = ShapeMetrics.setPositionStarted(ShapeMetrics.CIRCLE, points.size());
         Point point = points.get(0);
         if (!isMember(points) || !(point instanceof TwoDPoint))
             throw new IllegalArgumentException();
 
-        double[] coords = point.coordinates();
-        this.center = new TwoDPoint(coords[0], coords[1]);
+        this.center = new TwoDPoint(point.x(), point.y());
+        this.cachedBoundingBox = null;
+        ShapeMetrics.setPositionFinished(event);
     }
 
     /**
@@ -55,7 +63,10 @@ public class Circle implements TwoDShape {
      */
     @Override
     public boolean isMember(List<? extends Point> centers) {
-        return centers.size() == 1 && radius > 0;
+        if (centers.size() == 1 && radius > 0)
+            return true;
+        ShapeMetrics.rejected(ShapeMetrics.CIRCLE, centers);
+        return false;
     }
 
     /**
@@ -63,18 +74,62 @@ public class Circle implements TwoDShape {
      */
     @Override
     public double area() {
-        return Math.PI * (Math.pow(radius, 2));
+        ShapeMetrics.areaCalled(ShapeMetrics.CIRCLE);
+        if (Double.isNaN(cachedArea)) {
+            ShapeMetrics.cacheMiss();
+            cachedArea = area(radius);
+        } else {
+            ShapeMetrics.cacheHit();
+        }
+        return cachedArea;
     }
 
     /**
      * @return the perimeter (i.e., the total length of the boundary) of this circle
      */
     public double perimeter() {
+        ShapeMetrics.perimeterCalled(ShapeMetrics.CIRCLE);
+        if (Double.isNaN(cachedPerimeter)) {
+            ShapeMetrics.cacheMiss();
+            cachedPerimeter = perimeter(radius);
+        } else {
+            ShapeMetrics.cacheHit();
+        }
+        return cachedPerimeter;
+    }
+
+    /**
+     * @return the axis-aligned bounding box of this circle, i.e., its center plus or minus its radius along each axis,
+     * as <code>{minX, minY, maxX, maxY}</code>
+     */
+    @Override
+    public double[] boundingBox() {
+        if (cachedBoundingBox == null) {
+            ShapeMetrics.cacheMiss();
+            cachedBoundingBox = new double[]{center.x() - radius, center.y() - radius,
+                                             center.x() + radius, center.y() + radius};
+        } else {
+            ShapeMetrics.cacheHit();
+        }
+        return cachedBoundingBox.clone();
+    }
+
+    /**
+     * @return the area of a circle with the specified radius
+     */
+    static double area(double radius) {
+        return Math.PI * (Math.pow(radius, 2));
+    }
+
+    /**
+     * @return the perimeter of a circle with the specified radius
+     */
+    static double perimeter(double radius) {
         return 2 * Math.PI * radius;
     }
 
     @Override
     public String toString() {
-        return "Circle[center: " + center.coordinates()[0] + "," + center.coordinates()[1] + "; radius: " + radius + "]";
+        return "Circle[center: " + center.x() + "," + center.y() + "; radius: " + radius + "]";
     }
 }
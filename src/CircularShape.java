@@ -0,0 +1,12 @@
+/**
+ * A two-dimensional shape bounded by a circle, whose position is its center. This is what code that needs the radius
+ * of a circle should test for, rather than the concrete {@link Circle} class, so that lightweight views of circles,
+ * such as those of {@link ShapeStore#view(int)}, are handled as circles too.
+ */
+public interface CircularShape extends TwoDShape {
+
+    /**
+     * @return the radius of this circle
+     */
+    double getRadius();
+}
@@ -0,0 +1,251 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes the convex hull of large collections of two-dimensional points, given either as points or as a flat
+ * primitive coordinate array <code>{x0, y0, x1, y1, ...}</code> like the one taken by {@link TwoDPoint#ofDoubles}.
+ *
+ * Points are first run through an Akl-Toussaint prefilter: the extreme points in eight directions span an octagon
+ * inside the hull, and every point strictly inside that octagon is dropped without further work. For a large input
+ * the remaining points are split across a fork/join pool; each leaf task builds the hull of its chunk with Andrew's
+ * monotone chain, and neighbouring hulls are merged by running the monotone chain again over their vertices only.
+ *
+ * Hulls are returned in the canonical order of {@link Polygon}: starting with the vertex with the least x-value (the
+ * lower one if two share it) and going clockwise. Points lying on a hull edge are not vertices of the hull.
+ */
+public class ConvexHull {
+
+    /** Number of points below which a task builds its hull itself instead of splitting further. */
+    private static final int THRESHOLD = 1 << 14;
+
+    private ConvexHull() {
+    }
+
+    /**
+     * @return the vertices of the convex hull of the points, as a flat coordinate array in canonical order
+     */
+    public static double[] vertices(List<? extends Point> points) {
+        double[] coordinates = new double[2 * points.size()];
+        int i = 0;
+        for (Point p : points) {
+            coordinates[i++] = p.x();
+            coordinates[i++] = p.y();
+        }
+        return vertices(coordinates);
+    }
+
+    /**
+     * @param coordinates the points as <code>{x0, y0, x1, y1, ...}</code>, which is not modified
+     * @return the vertices of the convex hull of the points, as a flat coordinate array in canonical order
+     * @throws IllegalArgumentException if the array has an odd length
+     */
+    public static double[] vertices(double[] coordinates) {
+        return vertices(coordinates, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param coordinates the points as <code>{x0, y0, x1, y1, ...}</code>, which is not modified
+     * @param pool        the pool to build the hulls of large inputs in
+     * @return the vertices of the convex hull of the points, as a flat coordinate array in canonical order
+     * @throws IllegalArgumentException if the array has an odd length
+     */
+    public static double[] vertices(double[] coordinates, ForkJoinPool pool) {
+        if (coordinates.length % 2 != 0)
+            throw new IllegalArgumentException();
+        int n = coordinates.length / 2;
+        double[] octagon = octagon(coordinates, n);
+        if (n <= THRESHOLD)
+            return chunkHull(coordinates, 0, n, octagon);
+        return pool.invoke(new HullTask(coordinates, 0, n, octagon));
+    }
+
+    /**
+     * @return the convex hull of the points as a polygon
+     * @throws IllegalArgumentException if the points have fewer than three hull vertices, i.e., they are all collinear
+     */
+    public static Polygon polygon(List<? extends Point> points) {
+        return toPolygon(vertices(points));
+    }
+
+    /**
+     * @param coordinates the points as <code>{x0, y0, x1, y1, ...}</code>, which is not modified
+     * @return the convex hull of the points as a polygon
+     * @throws IllegalArgumentException if the points have fewer than three hull vertices, i.e., they are all collinear
+     */
+    public static Polygon polygon(double[] coordinates) {
+        return toPolygon(vertices(coordinates));
+    }
+
+    private static Polygon toPolygon(double[] hull) {
+        if (hull.length < 6)
+            throw new IllegalArgumentException();
+        return Polygon.ofCanonical(hull);
+    }
+
+    private static final class HullTask extends RecursiveTask<double[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] coordinates, octagon;
+        private final int      from, to;
+
+        HullTask(double[] coordinates, int from, int to, double[] octagon) {
+            this.coordinates = coordinates;
+            this.from = from;
+            this.to = to;
+            this.octagon = octagon;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (to - from <= THRESHOLD)
+                return chunkHull(coordinates, from, to, octagon);
+
+            int mid = (from + to) >>> 1;
+            HullTask left = new HullTask(coordinates, from, mid, octagon);
+            left.fork();
+            double[] right = new HullTask(coordinates, mid, to, octagon).compute();
+            double[] leftHull = left.join();
+
+            double[] both = Arrays.copyOf(leftHull, leftHull.length + right.length);
+            System.arraycopy(right, 0, both, leftHull.length, right.length);
+            return monotoneChain(both, both.length / 2);
+        }
+    }
+
+    /**
+     * @return the hull of the points <code>[from, to)</code> that survive the prefilter
+     */
+    private static double[] chunkHull(double[] coordinates, int from, int to, double[] octagon) {
+        double[] kept = new double[2 * (to - from)];
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            double x = coordinates[2 * i], y = coordinates[2 * i + 1];
+            if (octagon == null || !strictlyInside(octagon, x, y)) {
+                kept[2 * count] = x;
+                kept[2 * count + 1] = y;
+                count++;
+            }
+        }
+        return monotoneChain(kept, count);
+    }
+
+    /**
+     * Finds the extreme points of the first <code>n</code> points along the directions x, x + y, y and x - y, both
+     * ways, and joins them counterclockwise into a convex polygon lying inside the hull.
+     *
+     * @return the vertices of the octagon with consecutive duplicates removed, or <code>null</code> if it has fewer
+     * than three vertices and so cannot contain anything
+     */
+    static double[] octagon(double[] coordinates, int n) {
+        if (n == 0)
+            return null;
+        // Indices of the points with least x, least x + y, least y, greatest x - y, greatest x, greatest x + y,
+        // greatest y and least x - y, in counterclockwise order around the hull
+        int[] extreme = new int[8];
+        for (int i = 1; i < n; i++) {
+            double x = coordinates[2 * i], y = coordinates[2 * i + 1];
+            if (x < coordinates[2 * extreme[0]]) extreme[0] = i;
+            if (x + y < sum(coordinates, extreme[1])) extreme[1] = i;
+            if (y < coordinates[2 * extreme[2] + 1]) extreme[2] = i;
+            if (x - y > difference(coordinates, extreme[3])) extreme[3] = i;
+            if (x > coordinates[2 * extreme[4]]) extreme[4] = i;
+            if (x + y > sum(coordinates, extreme[5])) extreme[5] = i;
+            if (y > coordinates[2 * extreme[6] + 1]) extreme[6] = i;
+            if (x - y < difference(coordinates, extreme[7])) extreme[7] = i;
+        }
+
+        double[] octagon = new double[16];
+        int count = 0;
+        for (int k = 0; k < 8; k++) {
+            double x = coordinates[2 * extreme[k]], y = coordinates[2 * extreme[k] + 1];
+            if (count > 0 && x == octagon[2 * count - 2] && y == octagon[2 * count - 1])
+                continue;
+            octagon[2 * count] = x;
+            octagon[2 * count + 1] = y;
+            count++;
+        }
+        while (count > 1 && octagon[0] == octagon[2 * count - 2] && octagon[1] == octagon[2 * count - 1])
+            count--;
+        return count < 3 ? null : Arrays.copyOf(octagon, 2 * count);
+    }
+
+    private static double sum(double[] coordinates, int i) {
+        return coordinates[2 * i] + coordinates[2 * i + 1];
+    }
+
+    private static double difference(double[] coordinates, int i) {
+        return coordinates[2 * i] - coordinates[2 * i + 1];
+    }
+
+    /**
+     * @return <code>true</code> if (x, y) lies strictly to the left of every edge of the counterclockwise polygon
+     */
+    private static boolean strictlyInside(double[] polygon, double x, double y) {
+        int n = polygon.length / 2;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            if (Orientation.sign(polygon[2 * j], polygon[2 * j + 1], polygon[2 * i], polygon[2 * i + 1], x, y) <= 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Andrew's monotone chain over the first <code>n</code> points: sorts them by (x, y), then builds the upper hull
+     * from left to right and the lower hull from right to left, which together run clockwise from the least point.
+     *
+     * @return the hull vertices in canonical order
+     */
+    static double[] monotoneChain(double[] coordinates, int n) {
+        int[] order = Polygon.sortedIndices(n, (i, j) -> {
+            int byX = Double.compare(coordinates[2 * i], coordinates[2 * j]);
+            return byX != 0 ? byX : Double.compare(coordinates[2 * i + 1], coordinates[2 * j + 1]);
+        });
+
+        // Drop duplicate points, which would otherwise make zero-length hull edges
+        int distinct = 0;
+        for (int k = 0; k < n; k++) {
+            if (distinct == 0 || coordinates[2 * order[k]] != coordinates[2 * order[distinct - 1]] ||
+                    coordinates[2 * order[k] + 1] != coordinates[2 * order[distinct - 1] + 1])
+                order[distinct++] = order[k];
+        }
+        if (distinct < 3) {
+            double[] hull = new double[2 * distinct];
+            for (int k = 0; k < distinct; k++) {
+                hull[2 * k] = coordinates[2 * order[k]];
+                hull[2 * k + 1] = coordinates[2 * order[k] + 1];
+            }
+            return hull;
+        }
+
+        int[] hull = new int[2 * distinct];
+        int size = 0;
+        // Upper hull: keep only right turns
+        for (int k = 0; k < distinct; k++) {
+            while (size >= 2 && turn(coordinates, hull[size - 2], hull[size - 1], order[k]) >= 0)
+                size--;
+            hull[size++] = order[k];
+        }
+        // Lower hull, back to the start
+        int upper = size;
+        for (int k = distinct - 2; k >= 0; k--) {
+            while (size > upper && turn(coordinates, hull[size - 2], hull[size - 1], order[k]) >= 0)
+                size--;
+            hull[size++] = order[k];
+        }
+        size--;     // the first point was added again at the end
+
+        double[] vertices = new double[2 * size];
+        for (int k = 0; k < size; k++) {
+            vertices[2 * k] = coordinates[2 * hull[k]];
+            vertices[2 * k + 1] = coordinates[2 * hull[k] + 1];
+        }
+        return vertices;
+    }
+
+    private static int turn(double[] coordinates, int a, int b, int c) {
+        return Orientation.sign(coordinates[2 * a], coordinates[2 * a + 1], coordinates[2 * b], coordinates[2 * b + 1],
+                                coordinates[2 * c], coordinates[2 * c + 1]);
+    }
+}
@@ -0,0 +1,250 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Bulk Euclidean distance kernels over primitive coordinate arrays, for computing the distances of millions of points
+ * at once without building {@link Point} objects. Points are given as one flat array of <code>dimension</code> values
+ * per point, <code>{x0, y0, x1, y1, ...}</code> for two dimensions or <code>{x0, y0, z0, x1, y1, z1, ...}</code> for
+ * three, and every kernel fills an output array with one value per point.
+ *
+ * Each kernel has a squared variant, which skips the square root and is enough for comparing or thresholding
+ * distances. The distance from the origin agrees exactly with {@link Point#distanceFromOrigin()}. Inputs of more than
+ * a few thousand points are split across a fork/join pool, each task filling its own range of the output.
+ */
+public class DistanceKernels {
+
+    /** Number of output values below which a task computes its range itself. */
+    private static final int THRESHOLD = 1 << 14;
+
+    private DistanceKernels() {
+    }
+
+    /**
+     * Computes the distance of every point from the origin.
+     *
+     * @param out the destination array, with room for one value per point
+     * @throws IllegalArgumentException if the dimension is not two or three, or the arrays do not match it
+     */
+    public static void distancesFromOrigin(double[] coordinates, int dimension, double[] out) {
+        distances(coordinates, dimension, new double[dimension], false, out, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Computes the squared distance of every point from the origin.
+     *
+     * @param out the destination array, with room for one value per point
+     * @throws IllegalArgumentException if the dimension is not two or three, or the arrays do not match it
+     */
+    public static void squaredDistancesFromOrigin(double[] coordinates, int dimension, double[] out) {
+        distances(coordinates, dimension, new double[dimension], true, out, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Computes the distance of every point from the query point <code>from</code>.
+     *
+     * @param from the coordinates of the query point, <code>dimension</code> values
+     * @param out  the destination array, with room for one value per point
+     * @throws IllegalArgumentException if the dimension is not two or three, or the arrays do not match it
+     */
+    public static void distances(double[] coordinates, int dimension, double[] from, double[] out) {
+        distances(coordinates, dimension, from, false, out, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Computes the squared distance of every point from the query point <code>from</code>.
+     *
+     * @param from the coordinates of the query point, <code>dimension</code> values
+     * @param out  the destination array, with room for one value per point
+     * @throws IllegalArgumentException if the dimension is not two or three, or the arrays do not match it
+     */
+    public static void squaredDistances(double[] coordinates, int dimension, double[] from, double[] out) {
+        distances(coordinates, dimension, from, true, out, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Computes the distance, or squared distance, of every point from the query point <code>from</code>, using the
+     * specified fork/join pool for large inputs.
+     *
+     * @param from    the coordinates of the query point, <code>dimension</code> values
+     * @param squared whether to compute squared distances
+     * @param out     the destination array, with room for one value per point
+     * @throws IllegalArgumentException if the dimension is not two or three, or the arrays do not match it
+     */
+    public static void distances(double[] coordinates, int dimension, double[] from, boolean squared, double[] out,
+                                 ForkJoinPool pool) {
+        int n = count(coordinates, dimension);
+        if (from.length != dimension || out.length < n)
+            throw new IllegalArgumentException();
+        if (n <= THRESHOLD)
+            fill(coordinates, dimension, from, squared, out, 0, n);
+        else
+            pool.invoke(new DistanceTask(coordinates, dimension, from, squared, out, 0, n));
+    }
+
+    /**
+     * Computes the distance between every point of <code>a</code> and every point of <code>b</code>. The matrix holds
+     * <code>|a| * |b|</code> values, so this is meant for small batches.
+     *
+     * @return the matrix in row-major order: the distance between point <code>i</code> of <code>a</code> and point
+     * <code>j</code> of <code>b</code> is at index <code>i * |b| + j</code>
+     * @throws IllegalArgumentException if the dimension is not two or three, the arrays do not match it, or the
+     *                                  matrix would hold more values than an array can
+     */
+    public static double[] distanceMatrix(double[] a, double[] b, int dimension) {
+        return distanceMatrix(a, b, dimension, false, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Computes the squared distance between every point of <code>a</code> and every point of <code>b</code>, in the
+     * layout of {@link #distanceMatrix(double[], double[], int)}.
+     *
+     * @throws IllegalArgumentException if the dimension is not two or three, the arrays do not match it, or the
+     *                                  matrix would hold more values than an array can
+     */
+    public static double[] squaredDistanceMatrix(double[] a, double[] b, int dimension) {
+        return distanceMatrix(a, b, dimension, true, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Computes the distance, or squared distance, between every point of <code>a</code> and every point of
+     * <code>b</code>, in the layout of {@link #distanceMatrix(double[], double[], int)}, splitting the rows across the
+     * specified fork/join pool for large matrices.
+     *
+     * @throws IllegalArgumentException if the dimension is not two or three, the arrays do not match it, or the
+     *                                  matrix would hold more values than an array can
+     */
+    public static double[] distanceMatrix(double[] a, double[] b, int dimension, boolean squared, ForkJoinPool pool) {
+        int rows = count(a, dimension), columns = count(b, dimension);
+        if ((long) rows * columns > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Distance matrix too large: " + rows + " x " + columns);
+        double[] matrix = new double[rows * columns];
+        if ((long) rows * columns <= THRESHOLD || rows == 1)
+            fillRows(a, b, dimension, squared, matrix, 0, rows);
+        else
+            pool.invoke(new MatrixTask(a, b, dimension, squared, matrix, 0, rows));
+        return matrix;
+    }
+
+    private static final class DistanceTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] coordinates, from, out;
+        private final int      dimension, lo, hi;
+        private final boolean  squared;
+
+        DistanceTask(double[] coordinates, int dimension, double[] from, boolean squared, double[] out, int lo,
+                     int hi) {
+            this.coordinates = coordinates;
+            this.dimension = dimension;
+            this.from = from;
+            this.squared = squared;
+            this.out = out;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= THRESHOLD) {
+                fill(coordinates, dimension, from, squared, out, lo, hi);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new DistanceTask(coordinates, dimension, from, squared, out, lo, mid),
+                      new DistanceTask(coordinates, dimension, from, squared, out, mid, hi));
+        }
+    }
+
+    private static final class MatrixTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] a, b, matrix;
+        private final int      dimension, lo, hi;
+        private final boolean  squared;
+
+        MatrixTask(double[] a, double[] b, int dimension, boolean squared, double[] matrix, int lo, int hi) {
+            this.a = a;
+            this.b = b;
+            this.dimension = dimension;
+            this.squared = squared;
+            this.matrix = matrix;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if ((long) (hi - lo) * (b.length / dimension) <= THRESHOLD || hi - lo == 1) {
+                fillRows(a, b, dimension, squared, matrix, lo, hi);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new MatrixTask(a, b, dimension, squared, matrix, lo, mid),
+                      new MatrixTask(a, b, dimension, squared, matrix, mid, hi));
+        }
+    }
+
+    /**
+     * Fills <code>out[lo, hi)</code> with the distances of the points <code>[lo, hi)</code> on the calling thread. The
+     * loops are kept separate per dimension and flag, so that each is a straight-line body the JIT can unroll.
+     */
+    private static void fill(double[] coordinates, int dimension, double[] from, boolean squared, double[] out,
+                             int lo, int hi) {
+        if (dimension == 2) {
+            double fx = from[0], fy = from[1];
+            for (int i = lo, p = 2 * lo; i < hi; i++, p += 2) {
+                double dx = coordinates[p] - fx, dy = coordinates[p + 1] - fy;
+                out[i] = dx * dx + dy * dy;
+            }
+        } else {
+            double fx = from[0], fy = from[1], fz = from[2];
+            for (int i = lo, p = 3 * lo; i < hi; i++, p += 3) {
+                double dx = coordinates[p] - fx, dy = coordinates[p + 1] - fy, dz = coordinates[p + 2] - fz;
+                out[i] = dx * dx + dy * dy + dz * dz;
+            }
+        }
+        if (!squared) {
+            for (int i = lo; i < hi; i++)
+                out[i] = Math.sqrt(out[i]);
+        }
+    }
+
+    /**
+     * Fills the rows <code>[lo, hi)</code> of a distance matrix on the calling thread.
+     */
+    private static void fillRows(double[] a, double[] b, int dimension, boolean squared, double[] matrix, int lo,
+                                 int hi) {
+        int columns = b.length / dimension;
+        for (int i = lo; i < hi; i++) {
+            int offset = i * columns, q = i * dimension;
+            if (dimension == 2) {
+                double fx = a[q], fy = a[q + 1];
+                for (int j = 0, p = 0; j < columns; j++, p += 2) {
+                    double dx = b[p] - fx, dy = b[p + 1] - fy;
+                    matrix[offset + j] = dx * dx + dy * dy;
+                }
+            } else {
+                double fx = a[q], fy = a[q + 1], fz = a[q + 2];
+                for (int j = 0, p = 0; j < columns; j++, p += 3) {
+                    double dx = b[p] - fx, dy = b[p + 1] - fy, dz = b[p + 2] - fz;
+                    matrix[offset + j] = dx * dx + dy * dy + dz * dz;
+                }
+            }
+            if (!squared) {
+                for (int j = offset; j < offset + columns; j++)
+                    matrix[j] = Math.sqrt(matrix[j]);
+            }
+        }
+    }
+
+    /**
+     * @return the number of points in a coordinate array
+     * @throws IllegalArgumentException if the dimension is not two or three, or the length of the array is not a
+     *                                  multiple of it
+     */
+    private static int count(double[] coordinates, int dimension) {
+        if ((dimension != 2 && dimension != 3) || coordinates.length % dimension != 0)
+            throw new IllegalArgumentException();
+        return coordinates.length / dimension;
+    }
+}
@@ -0,0 +1,495 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A table of circles, triangles and quadrilaterals stored outside the Java heap, either in direct memory or in a
+ * memory-mapped file. The garbage collector only ever sees one buffer object per segment of 65,536 shapes, however many
+ * shapes the table holds, so a large table adds nothing to the work of a full collection.
+ *
+ * Every shape takes one fixed-size little-endian record of 72 bytes:
+ * <pre>
+ *   0   kind (byte: 0 circle, 3 triangle, 4 quadrilateral), followed by 7 unused bytes
+ *   8   x0, y0, x1, y1, x2, y2, x3, y3 (doubles)
+ * </pre>
+ * A circle stores its center in <code>x0, y0</code> and its radius in <code>x1</code>. A triangle or quadrilateral
+ * stores its vertices in the canonical order of its <code>getPosition()</code>. A file-backed table starts with a
+ * 16-byte header (magic number "SHPT", format version, shape count), so it can be reopened later.
+ *
+ * Bulk kernels such as {@link #area(int, int, double[])} read the records in place, and {@link #view(int)} hands out
+ * lightweight {@link TwoDShape} views over a single record, as in {@link ShapeStore}. A table is not thread-safe.
+ */
+public class OffHeapShapeTable implements Closeable {
+
+    static final int RECORD_SIZE = 72;
+
+    private static final int OFFSET_X0     = 8;
+    private static final int OFFSET_RADIUS = 24;
+
+    private static final int SEGMENT_SHIFT = 16;
+    private static final int SEGMENT_MASK  = (1 << SEGMENT_SHIFT) - 1;
+    private static final int SEGMENT_BYTES = RECORD_SIZE << SEGMENT_SHIFT;
+
+    static final int MAGIC   = 0x54504853;   // "SHPT" when read as little-endian bytes
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 16;
+
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    private final FileChannel      channel;     // null for a table in direct memory
+    private final ByteBuffer       header;      // null for a table in direct memory
+    private int                    size;
+
+    /**
+     * Creates an empty table in direct memory, which is released once the table becomes unreachable.
+     */
+    public OffHeapShapeTable() {
+        this.channel = null;
+        this.header = null;
+    }
+
+    private OffHeapShapeTable(FileChannel channel) throws IOException {
+        this.channel = channel;
+        try {
+            this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) == 0 && header.getLong(8) == 0) {
+                header.putInt(0, MAGIC).putInt(4, VERSION);
+            } else if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a shape table: bad magic number");
+            } else if (header.getInt(4) != VERSION) {
+                throw new IOException("Unsupported shape table version " + header.getInt(4));
+            }
+
+            long count = header.getLong(8);
+            if (count < 0 || count > Integer.MAX_VALUE)
+                throw new IOException("Corrupt shape table header");
+            while ((long) segments.size() << SEGMENT_SHIFT < count)
+                addSegment();
+            this.size = (int) count;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a table backed by the specified file, creating the file if it does not exist. Changes are written to the
+     * file as they are made.
+     *
+     * @throws IOException if the file cannot be opened, or is not a shape table of a supported version
+     */
+    public static OffHeapShapeTable mapped(Path path) throws IOException {
+        return new OffHeapShapeTable(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                      StandardOpenOption.WRITE));
+    }
+
+    /**
+     * @return the number of shapes held in this table
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Appends a circle to this table.
+     *
+     * @return the index of the newly added circle
+     * @throws IllegalArgumentException if the radius is not positive
+     */
+    public int addCircle(double x, double y, double r) {
+        if (!(r > 0))
+            throw new IllegalArgumentException();
+        int i = nextRecord();
+        ByteBuffer segment = segment(i);
+        int p = offset(i);
+        segment.put(p, ShapeStore.CIRCLE);
+        segment.putDouble(p + OFFSET_X0, x);
+        segment.putDouble(p + OFFSET_X0 + 8, y);
+        segment.putDouble(p + OFFSET_RADIUS, r);
+        return i;
+    }
+
+    /**
+     * Appends a copy of the specified shape to this table, with its vertices in canonical order. Views of this or any
+     * other table or store are copied like the shapes they show.
+     *
+     * @return the index of the newly added shape
+     * @throws IllegalArgumentException if the shape is not a circle, triangle or quadrilateral, as told by
+     *                                  {@link ShapeStore#kindOf(TwoDShape)}
+     */
+    public int add(TwoDShape shape) {
+        ShapeStore.kindOf(shape);
+        int i = nextRecord();
+        write(i, shape);
+        return i;
+    }
+
+    /**
+     * Replaces the shape at the specified index with a copy of the specified shape.
+     *
+     * @throws IndexOutOfBoundsException if the index is out of range
+     * @throws IllegalArgumentException  if the shape is not a circle, triangle or quadrilateral, as told by
+     *                                   {@link ShapeStore#kindOf(TwoDShape)}
+     */
+    public void set(int index, TwoDShape shape) {
+        checkIndex(index);
+        write(index, shape);
+    }
+
+    /**
+     * @return the kind of the shape at the specified index: 0 for a circle, 3 for a triangle, 4 for a quadrilateral
+     */
+    public byte kind(int index) {
+        checkIndex(index);
+        return segment(index).get(offset(index));
+    }
+
+    /**
+     * @return the number of sides of the shape at the specified index, as given by {@link TwoDShape#numSides()}
+     */
+    public int numSides(int index) {
+        byte kind = kind(index);
+        return kind == ShapeStore.CIRCLE ? (int) Double.POSITIVE_INFINITY : kind;
+    }
+
+    /**
+     * @return the area of the shape at the specified index
+     */
+    public double area(int index) {
+        checkIndex(index);
+        return areaOf(segment(index), offset(index));
+    }
+
+    /**
+     * @return the perimeter of the shape at the specified index
+     */
+    public double perimeter(int index) {
+        checkIndex(index);
+        return perimeterOf(segment(index), offset(index));
+    }
+
+    /**
+     * Returns the least x-value of the shape at the specified index, i.e., the x-value of its first canonical vertex
+     * or, for a circle, the x-value of its center minus its radius.
+     */
+    public double xLocation(int index) {
+        checkIndex(index);
+        return xLocationOf(segment(index), offset(index));
+    }
+
+    /**
+     * Computes the areas of the shapes in the index range <code>[from, to)</code>.
+     *
+     * @param out the destination array, filled starting at position 0
+     * @throws IndexOutOfBoundsException if the range is invalid or <code>out</code> is too short
+     */
+    public void area(int from, int to, double[] out) {
+        checkRange(from, to, out.length);
+        for (int i = from; i < to; ) {
+            ByteBuffer segment = segment(i);
+            int end = segmentEnd(i, to);
+            for (int p = offset(i); i < end; i++, p += RECORD_SIZE)
+                out[i - from] = areaOf(segment, p);
+        }
+    }
+
+    /**
+     * Computes the perimeters of the shapes in the index range <code>[from, to)</code>.
+     *
+     * @param out the destination array, filled starting at position 0
+     * @throws IndexOutOfBoundsException if the range is invalid or <code>out</code> is too short
+     */
+    public void perimeter(int from, int to, double[] out) {
+        checkRange(from, to, out.length);
+        for (int i = from; i < to; ) {
+            ByteBuffer segment = segment(i);
+            int end = segmentEnd(i, to);
+            for (int p = offset(i); i < end; i++, p += RECORD_SIZE)
+                out[i - from] = perimeterOf(segment, p);
+        }
+    }
+
+    /**
+     * Computes the least x-values, as given by {@link #xLocation(int)}, of the shapes in the index range
+     * <code>[from, to)</code>.
+     *
+     * @param out the destination array, filled starting at position 0
+     * @throws IndexOutOfBoundsException if the range is invalid or <code>out</code> is too short
+     */
+    public void xLocation(int from, int to, double[] out) {
+        checkRange(from, to, out.length);
+        for (int i = from; i < to; ) {
+            ByteBuffer segment = segment(i);
+            int end = segmentEnd(i, to);
+            for (int p = offset(i); i < end; i++, p += RECORD_SIZE)
+                out[i - from] = xLocationOf(segment, p);
+        }
+    }
+
+    /**
+     * @return the total area of the shapes in the index range <code>[from, to)</code>
+     */
+    public double totalArea(int from, int to) {
+        checkRange(from, to, to - from);
+        double total = 0.0;
+        for (int i = from; i < to; ) {
+            ByteBuffer segment = segment(i);
+            int end = segmentEnd(i, to);
+            for (int p = offset(i); i < end; i++, p += RECORD_SIZE)
+                total += areaOf(segment, p);
+        }
+        return total;
+    }
+
+    /**
+     * Returns a lightweight view of the shape at the specified index. The view reads its values straight from the
+     * record, and {@link TwoDShape#setPosition(List)} on the view writes the new position back. As in
+     * {@link ShapeStore#view(int)}, the view of a circle is a {@link CircularShape}, and a new view must be taken if
+     * the shape at the index is later replaced by one of another kind.
+     *
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public TwoDShape view(int index) {
+        checkIndex(index);
+        return kind(index) == ShapeStore.CIRCLE ? new CircleView(index) : new View(index);
+    }
+
+    /**
+     * @return a new, independent {@link Circle}, {@link Triangle} or {@link Quadrilateral} equal to the shape at the
+     * specified index
+     */
+    public TwoDShape get(int index) {
+        checkIndex(index);
+        ByteBuffer s = segment(index);
+        int p = offset(index) + OFFSET_X0;
+        switch (s.get(p - OFFSET_X0)) {
+            case ShapeStore.CIRCLE:
+                return new Circle(s.getDouble(p), s.getDouble(p + 8), s.getDouble(p + 16));
+            case ShapeStore.TRIANGLE:
+                return Triangle.ofCanonical(s.getDouble(p), s.getDouble(p + 8), s.getDouble(p + 16),
+                                            s.getDouble(p + 24), s.getDouble(p + 32), s.getDouble(p + 40));
+            default:
+                return Quadrilateral.ofCanonical(s.getDouble(p), s.getDouble(p + 8), s.getDouble(p + 16),
+                                                 s.getDouble(p + 24), s.getDouble(p + 32), s.getDouble(p + 40),
+                                                 s.getDouble(p + 48), s.getDouble(p + 56));
+        }
+    }
+
+    /**
+     * Writes any pending changes of a file-backed table to the file and closes it. Closing a table in direct memory has
+     * no effect; its memory is released once the table becomes unreachable.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel == null)
+            return;
+        ((MappedByteBuffer) header).force();
+        for (ByteBuffer segment : segments)
+            ((MappedByteBuffer) segment).force();
+        channel.close();
+    }
+
+    private static double areaOf(ByteBuffer s, int p) {
+        int q = p + OFFSET_X0;
+        switch (s.get(p)) {
+            case ShapeStore.CIRCLE:
+                return Circle.area(s.getDouble(p + OFFSET_RADIUS));
+            case ShapeStore.TRIANGLE:
+                return Triangle.area(s.getDouble(q), s.getDouble(q + 8), s.getDouble(q + 16), s.getDouble(q + 24),
+                                     s.getDouble(q + 32), s.getDouble(q + 40));
+            default:
+                return Quadrilateral.area(s.getDouble(q), s.getDouble(q + 8), s.getDouble(q + 16),
+                                          s.getDouble(q + 24), s.getDouble(q + 32), s.getDouble(q + 40),
+                                          s.getDouble(q + 48), s.getDouble(q + 56));
+        }
+    }
+
+    private static double perimeterOf(ByteBuffer s, int p) {
+        int q = p + OFFSET_X0;
+        switch (s.get(p)) {
+            case ShapeStore.CIRCLE:
+                return Circle.perimeter(s.getDouble(p + OFFSET_RADIUS));
+            case ShapeStore.TRIANGLE:
+                return Triangle.perimeter(s.getDouble(q), s.getDouble(q + 8), s.getDouble(q + 16),
+                                          s.getDouble(q + 24), s.getDouble(q + 32), s.getDouble(q + 40));
+            default:
+                return Quadrilateral.perimeter(s.getDouble(q), s.getDouble(q + 8), s.getDouble(q + 16),
+                                               s.getDouble(q + 24), s.getDouble(q + 32), s.getDouble(q + 40),
+                                               s.getDouble(q + 48), s.getDouble(q + 56));
+        }
+    }
+
+    private static double xLocationOf(ByteBuffer s, int p) {
+        double x = s.getDouble(p + OFFSET_X0);
+        return s.get(p) == ShapeStore.CIRCLE ? x - s.getDouble(p + OFFSET_RADIUS) : x;
+    }
+
+    private void write(int i, TwoDShape shape) {
+        byte kind = ShapeStore.kindOf(shape);
+        double[] coordinates = ShapeStore.coordinates(shape, kind);
+        ByteBuffer segment = segment(i);
+        int p = offset(i);
+        segment.put(p, kind);
+        for (int k = 0; k < coordinates.length; k++)
+            segment.putDouble(p + OFFSET_X0 + 8 * k, coordinates[k]);
+        if (kind == ShapeStore.CIRCLE)
+            segment.putDouble(p + OFFSET_RADIUS, ((CircularShape) shape).getRadius());
+    }
+
+    private int nextRecord() {
+        if (size == Integer.MAX_VALUE)
+            throw new IllegalStateException("Shape table is full");
+        if (size == segments.size() << SEGMENT_SHIFT)
+            addSegment();
+        size++;
+        if (header != null)
+            header.putLong(8, size);
+        return size - 1;
+    }
+
+    private void addSegment() {
+        ByteBuffer segment;
+        if (channel == null) {
+            segment = ByteBuffer.allocateDirect(SEGMENT_BYTES);
+        } else {
+            try {
+                long position = HEADER_SIZE + (long) segments.size() * SEGMENT_BYTES;
+                segment = channel.map(FileChannel.MapMode.READ_WRITE, position, SEGMENT_BYTES);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        segments.add(segment.order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    private ByteBuffer segment(int index) {
+        return segments.get(index >>> SEGMENT_SHIFT);
+    }
+
+    private static int offset(int index) {
+        return (index & SEGMENT_MASK) * RECORD_SIZE;
+    }
+
+    /**
+     * @return the end of the range <code>[index, to)</code> or of the segment holding <code>index</code>, whichever
+     * comes first
+     */
+    private static int segmentEnd(int index, int to) {
+        return (int) Math.min(to, ((long) (index >>> SEGMENT_SHIFT) + 1) << SEGMENT_SHIFT);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+
+    private void checkRange(int from, int to, int outLength) {
+        if (from < 0 || to > size || from > to || outLength < to - from)
+            throw new IndexOutOfBoundsException("Range: [" + from + ", " + to + "), Size: " + size);
+    }
+
+    /**
+     * A flyweight {@link TwoDShape} over a single record of the enclosing table.
+     */
+    private class View implements TwoDShape {
+        final int index;
+
+        View(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void setPosition(List<? extends Point> points) {
+            // Validate and canonicalize through the real shape class, then write the result back to the record
+            TwoDShape shape = get(index);
+            shape.setPosition(points);
+            write(index, shape);
+        }
+
+        @Override
+        public List<? extends Point> getPosition() {
+            final ByteBuffer segment = segment(index);
+            final int p = offset(index) + OFFSET_X0;
+            final int count = segment.get(p - OFFSET_X0) == ShapeStore.CIRCLE ? 1 : segment.get(p - OFFSET_X0);
+            return new AbstractList<TwoDPoint>() {
+                @Override
+                public TwoDPoint get(int i) {
+                    if (i < 0 || i >= count)
+                        throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + count);
+                    return new TwoDPoint(segment.getDouble(p + 16 * i), segment.getDouble(p + 16 * i + 8));
+                }
+
+                @Override
+                public int size() {
+                    return count;
+                }
+            };
+        }
+
+        @Override
+        public int numSides() {
+            return OffHeapShapeTable.this.numSides(index);
+        }
+
+        @Override
+        public boolean isMember(List<? extends Point> vertices) {
+            return get(index).isMember(vertices);
+        }
+
+        @Override
+        public double area() {
+            return OffHeapShapeTable.this.area(index);
+        }
+
+        @Override
+        public double[] boundingBox() {
+            ByteBuffer s = segment(index);
+            int p = offset(index);
+            double x = s.getDouble(p + OFFSET_X0), y = s.getDouble(p + OFFSET_X0 + 8);
+            if (s.get(p) == ShapeStore.CIRCLE) {
+                double r = s.getDouble(p + OFFSET_RADIUS);
+                return new double[]{x - r, y - r, x + r, y + r};
+            }
+            double[] box = {x, y, x, y};
+            for (int k = 1; k < s.get(p); k++) {
+                x = s.getDouble(p + OFFSET_X0 + 16 * k);
+                y = s.getDouble(p + OFFSET_X0 + 16 * k + 8);
+                box[0] = Math.min(box[0], x);
+                box[1] = Math.min(box[1], y);
+                box[2] = Math.max(box[2], x);
+                box[3] = Math.max(box[3], y);
+            }
+            return box;
+        }
+
+        @Override
+        public String toString() {
+            return get(index).toString();
+        }
+    }
+
+    /**
+     * A view of a circle, which exposes its radius like a real {@link Circle}.
+     */
+    private final class CircleView extends View implements CircularShape {
+        CircleView(int index) {
+            super(index);
+        }
+
+        @Override
+        public double getRadius() {
+            return segment(index).getDouble(offset(index) + OFFSET_RADIUS);
+        }
+    }
+}
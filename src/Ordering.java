@@ -1,4 +1,7 @@
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 public class Ordering {
 
@@ -11,36 +14,79 @@ public class Ordering {
         public int compare(TwoDShape o1, TwoDShape o2) {
             // Get smallest (xcoord, ycoord) pair from each shape
             Point p1 = o1.getPosition().get(0);
-            double x1 = p1.coordinates()[0];
-            double y1 = p1.coordinates()[1];
-            if (o1 instanceof Circle) {         // Furthest left point on circle is (centerX - radius, centerY)
-                Circle circle1 = (Circle) o1;
-                x1 -= circle1.getRadius();
-            }
-
             Point p2 = o2.getPosition().get(0);
-            double x2 = p2.coordinates()[0];
-            double y2 = p2.coordinates()[1];
-            if (o2 instanceof Circle) {
-                Circle circle2 = (Circle) o2;
-                x2 -= circle2.getRadius();
-            }
+            return compareXLocation(xLocation(o1, p1), p1.y(), xLocation(o2, p2), p2.y());
+        }
+    }
 
-            if (x1 == x2)
-                return (int) Math.floor(y2 - y1);
+    /**
+     * @return the least x-value of a shape whose first canonical vertex (or center, for a circle) is <code>first</code>
+     */
+    static double xLocation(TwoDShape shape, Point first) {
+        if (shape instanceof CircularShape)     // Furthest left point on circle is (centerX - radius, centerY)
+            return first.x() - ((CircularShape) shape).getRadius();
+        return first.x();
+    }
 
-            return (int) Math.floor(x1 - x2);
+    /**
+     * Compares two x-locations given as (least x-value, y-value of that point): by increasing x, and for equal x-values
+     * the higher point comes first.
+     */
+    static int compareXLocation(double x1, double y1, double x2, double y2) {
+        int byX = Double.compare(x1, x2);
+        return byX != 0 ? byX : Double.compare(y2, y1);
+    }
+
+    /**
+     * Sorts a list of shapes into the same order as {@link XLocationShapeComparator}. Rather than recomputing the
+     * x-location of both shapes on every comparison, the keys are extracted once per shape into primitive arrays and
+     * sorted with the stable radix sort of {@link PointSorter}: first by the y-value of the first vertex, descending,
+     * and then by x-location, so that shapes at the same x-location keep the order of the first pass.
+     *
+     * @param shapes the list to sort in place
+     */
+    static <T extends TwoDShape> void sortByXLocation(List<T> shapes) {
+        long start = ShapeMetrics.sortStarted();
+        Object[] array = shapes.toArray();
+        double[] x = new double[array.length];
+        long[] keys = new long[array.length];
+        for (int i = 0; i < array.length; i++) {
+            TwoDShape shape = (TwoDShape) array[i];
+            Point first = shape.getPosition().get(0);
+            x[i] = xLocation(shape, first);
+            // Flipping every bit reverses the unsigned order, so greater y-values come first
+            keys[i] = ~PointSorter.key(first.y());
         }
+        int[] byY = PointSorter.sort(keys, ForkJoinPool.commonPool());
+        for (int i = 0; i < byY.length; i++)
+            keys[i] = PointSorter.key(x[byY[i]]);
+        int[] order = PointSorter.sort(keys, ForkJoinPool.commonPool());
+        for (int i = 0; i < order.length; i++)
+            order[i] = byY[order[i]];
+        PointSorter.permute(shapes, array, order);
+        ShapeMetrics.SORT_BY_X_LOCATION.recordSince(start);
+    }
+
+    /**
+     * Sorts a list of shapes into their natural order, i.e., by increasing area, computing each area only once instead
+     * of on every comparison. The areas are sorted as primitive keys with the stable radix sort of {@link PointSorter}.
+     *
+     * @param shapes the list to sort in place
+     */
+    static <T extends TwoDShape> void sortByArea(List<T> shapes) {
+        long start = ShapeMetrics.sortStarted();
+        Object[] array = shapes.toArray();
+        long[] keys = new long[array.length];
+        for (int i = 0; i < array.length; i++)
+            keys[i] = PointSorter.key(((TwoDShape) array[i]).area());
+        PointSorter.permute(shapes, array, PointSorter.sort(keys, ForkJoinPool.commonPool()));
+        ShapeMetrics.SORT_BY_AREA.recordSince(start);
     }
 
     static class XLocationPointComparator implements Comparator<Point> {
         @Override
         public int compare(Point o1, Point o2) {
-            // Get xcoords from the two points
-            Double x1 = o1.coordinates()[0];
-            Double x2 = o2.coordinates()[0];
-
-            return (int) Math.floor(x1 - x2);
+            return Double.compare(o1.x(), o2.x());
         }
     }
 
@@ -159,7 +205,7 @@ public class Ordering {
     static TwoDShape printAllAndReturnLeast(List<TwoDShape> aList, AbstractPrinter<TwoDShape> aPrinter) {
         TwoDShape least = aList.get(0);
         for (TwoDShape t : aList) {
-            if (least.compareTo(t) < 0)
+            if (least.compareTo(t) > 0)
                 least = t;
 
             aPrinter.print(t);
@@ -167,4 +213,171 @@ public class Ordering {
 
         return least;
     }
+
+    /**
+     * A parallel version of {@link #printAllAndReturnLeast(List, AbstractPrinter)}. Every element is still printed
+     * exactly once and in list order, but the search for the least element runs at the same time on the common
+     * fork/join pool, where it is split across all cores.
+     *
+     * @param aList the list of provided two-dimensional shape instances
+     * @param aPrinter the specified printer instance
+     * @return the least element from <code>aList</code>, as per the natural ordering of the shapes; if several are
+     * equally least, the first of them
+     */
+    static TwoDShape printAllAndReturnLeastParallel(List<TwoDShape> aList, AbstractPrinter<TwoDShape> aPrinter) {
+        if (aList.isEmpty())
+            throw new IndexOutOfBoundsException("Index: 0, Size: 0");
+        return printAllAndReturnLeast(aList, aPrinter, 1).get(0);
+    }
+
+    /**
+     * Prints each element of a list of shapes in order, and returns its <code>k</code> least elements in increasing
+     * natural order, ties going to the element that comes first in the list.
+     *
+     * The selection is a fork/join reduction on the common pool: the list is split into ranges, each range keeps its
+     * <code>k</code> least elements in a bounded max-heap keyed on areas computed once per element, and the heaps are
+     * merged pairwise on the way back up. Meanwhile the calling thread prints the elements in order, so the printer is
+     * only ever called from one thread.
+     *
+     * @param aList the list of provided two-dimensional shape instances
+     * @param aPrinter the specified printer instance
+     * @param k the number of least elements to return
+     * @return at most <code>k</code> least elements from <code>aList</code>, in increasing order
+     */
+    static List<TwoDShape> printAllAndReturnLeast(List<TwoDShape> aList, AbstractPrinter<TwoDShape> aPrinter, int k) {
+        if (k < 0)
+            throw new IllegalArgumentException();
+
+        TwoDShape[] shapes = aList.toArray(new TwoDShape[0]);
+        ForkJoinTask<LeastHeap> selection = ForkJoinPool.commonPool()
+                                                        .submit(new LeastTask(shapes, 0, shapes.length, k));
+        for (TwoDShape t : shapes)
+            aPrinter.print(t);
+
+        LeastHeap heap = selection.join();
+        int[] indices = heap.sortedIndices();
+        List<TwoDShape> least = new ArrayList<>(indices.length);
+        for (int index : indices)
+            least.add(shapes[index]);
+        return least;
+    }
+
+    private static final class LeastTask extends RecursiveTask<LeastHeap> {
+        private static final long serialVersionUID = 1L;
+
+        private static final int THRESHOLD = 4096;
+
+        private final TwoDShape[] shapes;
+        private final int         from, to, k;
+
+        LeastTask(TwoDShape[] shapes, int from, int to, int k) {
+            this.shapes = shapes;
+            this.from = from;
+            this.to = to;
+            this.k = k;
+        }
+
+        @Override
+        protected LeastHeap compute() {
+            if (to - from <= THRESHOLD) {
+                LeastHeap heap = new LeastHeap(k);
+                for (int i = from; i < to; i++)
+                    heap.offer(shapes[i].area(), i);
+                return heap;
+            }
+
+            int mid = (from + to) >>> 1;
+            LeastTask left = new LeastTask(shapes, from, mid, k);
+            left.fork();
+            LeastHeap right = new LeastTask(shapes, mid, to, k).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /**
+     * A max-heap holding the <code>k</code> least (area, index) pairs offered to it, in primitive arrays.
+     */
+    private static final class LeastHeap {
+        private final double[] areas;
+        private final int[]    indices;
+        private int            size;
+
+        LeastHeap(int k) {
+            areas = new double[k];
+            indices = new int[k];
+        }
+
+        void offer(double area, int index) {
+            if (size < areas.length) {
+                areas[size] = area;
+                indices[size] = index;
+                siftUp(size++);
+            } else if (size > 0 && greater(areas[0], indices[0], area, index)) {
+                areas[0] = area;
+                indices[0] = index;
+                siftDown(0);
+            }
+        }
+
+        LeastHeap merge(LeastHeap other) {
+            for (int i = 0; i < other.size; i++)
+                offer(other.areas[i], other.indices[i]);
+            return this;
+        }
+
+        /**
+         * @return the indices held by this heap, least first
+         */
+        int[] sortedIndices() {
+            int n = size;
+            int[] sorted = new int[n];
+            // Repeatedly move the greatest element to the end of the heap
+            while (size > 0) {
+                sorted[--size] = indices[0];
+                swap(0, size);
+                siftDown(0);
+            }
+            size = n;
+            return sorted;
+        }
+
+        /** Orders by area, and then by index so that ties go to the element earliest in the list. */
+        private static boolean greater(double area1, int index1, double area2, int index2) {
+            int byArea = Double.compare(area1, area2);
+            return byArea > 0 || (byArea == 0 && index1 > index2);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!greater(areas[i], indices[i], areas[parent], indices[parent]))
+                    return;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int largest = i, left = 2 * i + 1, right = left + 1;
+                if (left < size && greater(areas[left], indices[left], areas[largest], indices[largest]))
+                    largest = left;
+                if (right < size && greater(areas[right], indices[right], areas[largest], indices[largest]))
+                    largest = right;
+                if (largest == i)
+                    return;
+                swap(i, largest);
+                i = largest;
+            }
+        }
+
+        private void swap(int i, int j) {
+            double area = areas[i];
+            areas[i] = areas[j];
+            areas[j] = area;
+            int index = indices[i];
+            indices[i] = indices[j];
+            indices[j] = index;
+        }
+    }
 }
@@ -0,0 +1,48 @@
+import java.math.BigDecimal;
+
+/**
+ * The orientation predicate shared by shape validation, canonical vertex ordering and the geometry built on them: the
+ * sign of the cross product <code>(b - a) x (c - a)</code>, which says whether the points a, b, c turn
+ * counterclockwise, clockwise or lie on one line.
+ *
+ * The sign is computed exactly for every finite input. The floating-point determinant is used whenever its magnitude
+ * exceeds a bound on its rounding error (Shewchuk's filter, as in his <code>orient2d</code>), which is all but always
+ * the case; otherwise the determinant is recomputed exactly with {@link BigDecimal}, into which every double converts
+ * without loss. The fast path neither divides nor allocates.
+ */
+final class Orientation {
+
+    /** Relative error bound of the floating-point determinant: <code>(3 + 16 * eps) * eps</code>, eps = 2^-53. */
+    private static final double ERROR_BOUND = (3.0 + 16.0 * 0x1p-53) * 0x1p-53;
+
+    private Orientation() {
+    }
+
+    /**
+     * @return <code>1</code> if the points a, b, c turn counterclockwise, <code>-1</code> if they turn clockwise, and
+     * <code>0</code> if they are collinear, including when any two of them coincide. If a coordinate is infinite or
+     * NaN, the result is the sign of the floating-point determinant, and <code>0</code> if that is NaN.
+     */
+    static int sign(double ax, double ay, double bx, double by, double cx, double cy) {
+        double left = (bx - ax) * (cy - ay);
+        double right = (by - ay) * (cx - ax);
+        double det = left - right;
+        if (Math.abs(det) > ERROR_BOUND * (Math.abs(left) + Math.abs(right)))
+            return det > 0 ? 1 : -1;
+        return exactSign(ax, ay, bx, by, cx, cy, det);
+    }
+
+    /**
+     * Computes the sign of the determinant exactly. Reached when the filter cannot certify the floating-point sign:
+     * when the points are collinear or nearly so, or when a product overflows or underflows.
+     */
+    private static int exactSign(double ax, double ay, double bx, double by, double cx, double cy, double det) {
+        if (!Double.isFinite(ax) || !Double.isFinite(ay) || !Double.isFinite(bx) || !Double.isFinite(by) ||
+                !Double.isFinite(cx) || !Double.isFinite(cy))
+            return det > 0 ? 1 : det < 0 ? -1 : 0;
+        BigDecimal x = new BigDecimal(ax), y = new BigDecimal(ay);
+        BigDecimal left = new BigDecimal(bx).subtract(x).multiply(new BigDecimal(cy).subtract(y));
+        BigDecimal right = new BigDecimal(by).subtract(y).multiply(new BigDecimal(cx).subtract(x));
+        return left.compareTo(right);
+    }
+}
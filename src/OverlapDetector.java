@@ -0,0 +1,243 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Finds every pair of overlapping shapes in a collection without testing all pairs against each other.
+ *
+ * The broad phase sweeps the shapes' bounding boxes in increasing order of their least x-value, the same order as
+ * {@link Ordering.XLocationShapeComparator}. An active set, ordered by greatest x-value, holds the boxes the sweep line
+ * still crosses; each new box retires the boxes that end before it starts, and is paired with the remaining ones whose
+ * y-ranges meet its own. The narrow phase then runs an exact intersection test on each candidate pair, optionally in
+ * parallel.
+ *
+ * Shapes are treated as closed regions: two shapes overlap if they share at least one point, so shapes that merely
+ * touch count as overlapping. A circle is the disc of its radius around its center, and any other shape is the polygon
+ * through its vertices in the order of <code>getPosition()</code>.
+ */
+public class OverlapDetector {
+
+    /**
+     * Two overlapping shapes. The shape that came first in the input collection is {@link #first()}.
+     */
+    public static final class Pair {
+        private final TwoDShape first, second;
+
+        Pair(TwoDShape first, TwoDShape second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        public TwoDShape first() { return first; }
+
+        public TwoDShape second() { return second; }
+
+        @Override
+        public String toString() {
+            return "OverlapDetector.Pair[" + first + ", " + second + "]";
+        }
+    }
+
+    /** A shape's bounding box and its exact geometry, extracted once before the sweep. */
+    private static final class Entry {
+        final int       index;
+        final TwoDShape shape;
+        final double    minX, minY, maxX, maxY;
+        final double[]  coordinates;    // x, y of each vertex, or of the center for a circle
+        final double    radius;         // NaN for a polygon
+
+        Entry(int index, TwoDShape shape) {
+            this.index = index;
+            this.shape = shape;
+            double[] box = shape.boundingBox();
+            this.minX = box[0];
+            this.minY = box[1];
+            this.maxX = box[2];
+            this.maxY = box[3];
+
+            List<? extends Point> position = shape.getPosition();
+            this.coordinates = new double[2 * position.size()];
+            for (int i = 0; i < position.size(); i++) {
+                coordinates[2 * i] = position.get(i).x();
+                coordinates[2 * i + 1] = position.get(i).y();
+            }
+            this.radius = shape instanceof CircularShape ? ((CircularShape) shape).getRadius() : Double.NaN;
+        }
+
+        boolean isCircle() {
+            return !Double.isNaN(radius);
+        }
+    }
+
+    private OverlapDetector() {
+    }
+
+    /**
+     * Returns every pair of overlapping shapes in the collection, running the exact tests on the calling thread.
+     *
+     * @param shapes the shapes to test, which must not be moved until the returned stream has been consumed
+     * @return a stream of the overlapping pairs, each pair reported once
+     */
+    public static Stream<Pair> overlaps(Collection<? extends TwoDShape> shapes) {
+        return overlaps(shapes, false);
+    }
+
+    /**
+     * Returns every pair of overlapping shapes in the collection.
+     *
+     * @param shapes   the shapes to test, which must not be moved until the returned stream has been consumed
+     * @param parallel whether to run the exact tests on the candidate pairs in parallel
+     * @return a stream of the overlapping pairs, each pair reported once; a parallel stream if <code>parallel</code>
+     */
+    public static Stream<Pair> overlaps(Collection<? extends TwoDShape> shapes, boolean parallel) {
+        Entry[] entries = new Entry[shapes.size()];
+        int i = 0;
+        for (TwoDShape shape : shapes) {
+            entries[i] = new Entry(i, shape);
+            i++;
+        }
+        long[] candidates = candidates(entries);
+
+        IntStream pairs = IntStream.range(0, candidates.length);
+        if (parallel)
+            pairs = pairs.parallel();
+        return pairs.filter(k -> intersects(entries[(int) (candidates[k] >>> 32)], entries[(int) candidates[k]]))
+                    .mapToObj(k -> pair(entries[(int) (candidates[k] >>> 32)], entries[(int) candidates[k]]));
+    }
+
+    /**
+     * Sweep-and-prune over the bounding boxes.
+     *
+     * @return the candidate pairs, each packed as the position in <code>entries</code> of one entry in the high 32
+     * bits and of the other in the low 32 bits
+     */
+    private static long[] candidates(Entry[] entries) {
+        Entry[] sorted = entries.clone();
+        Arrays.parallelSort(sorted, (a, b) -> Double.compare(a.minX, b.minX));
+
+        PriorityQueue<Entry> active = new PriorityQueue<>((a, b) -> Double.compare(a.maxX, b.maxX));
+        long[] candidates = new long[16];
+        int count = 0;
+        for (Entry entry : sorted) {
+            while (!active.isEmpty() && active.peek().maxX < entry.minX)
+                active.poll();
+            for (Entry other : active) {
+                if (other.minY <= entry.maxY && entry.minY <= other.maxY) {
+                    if (count == candidates.length)
+                        candidates = Arrays.copyOf(candidates, 2 * count);
+                    candidates[count++] = (long) other.index << 32 | entry.index;
+                }
+            }
+            active.add(entry);
+        }
+        return Arrays.copyOf(candidates, count);
+    }
+
+    private static Pair pair(Entry a, Entry b) {
+        return a.index < b.index ? new Pair(a.shape, b.shape) : new Pair(b.shape, a.shape);
+    }
+
+    /**
+     * @return <code>true</code> if the two shapes share at least one point
+     */
+    static boolean intersects(Entry a, Entry b) {
+        if (a.isCircle() && b.isCircle()) {
+            double dx = a.coordinates[0] - b.coordinates[0], dy = a.coordinates[1] - b.coordinates[1];
+            double reach = a.radius + b.radius;
+            return dx * dx + dy * dy <= reach * reach;
+        }
+        if (a.isCircle())
+            return circleIntersectsPolygon(a.coordinates[0], a.coordinates[1], a.radius, b.coordinates);
+        if (b.isCircle())
+            return circleIntersectsPolygon(b.coordinates[0], b.coordinates[1], b.radius, a.coordinates);
+        return polygonsIntersect(a.coordinates, b.coordinates);
+    }
+
+    /**
+     * @return <code>true</code> if the disc of radius <code>r</code> around (cx, cy) meets the polygon
+     */
+    static boolean circleIntersectsPolygon(double cx, double cy, double r, double[] polygon) {
+        if (contains(polygon, cx, cy))
+            return true;
+        int n = polygon.length / 2;
+        for (int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            double distance = squaredSegmentDistance(cx, cy, polygon[2 * i], polygon[2 * i + 1],
+                                                     polygon[2 * j], polygon[2 * j + 1]);
+            if (distance <= r * r)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return <code>true</code> if the two polygons, either of which may be concave, share at least one point
+     */
+    static boolean polygonsIntersect(double[] a, double[] b) {
+        int n = a.length / 2, m = b.length / 2;
+        for (int i = 0; i < n; i++) {
+            int i2 = (i + 1) % n;
+            for (int j = 0; j < m; j++) {
+                int j2 = (j + 1) % m;
+                if (segmentsIntersect(a[2 * i], a[2 * i + 1], a[2 * i2], a[2 * i2 + 1],
+                                      b[2 * j], b[2 * j + 1], b[2 * j2], b[2 * j2 + 1]))
+                    return true;
+            }
+        }
+        // No edges cross, so either one polygon lies entirely inside the other or they are disjoint
+        return contains(a, b[0], b[1]) || contains(b, a[0], a[1]);
+    }
+
+    /**
+     * @return <code>true</code> if the point (x, y) lies strictly inside the polygon, by the even-odd rule
+     */
+    static boolean contains(double[] polygon, double x, double y) {
+        int n = polygon.length / 2;
+        boolean inside = false;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            double xi = polygon[2 * i], yi = polygon[2 * i + 1];
+            double xj = polygon[2 * j], yj = polygon[2 * j + 1];
+            if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi)
+                inside = !inside;
+        }
+        return inside;
+    }
+
+    /**
+     * @return <code>true</code> if the closed segments (a, b) and (c, d) share at least one point
+     */
+    static boolean segmentsIntersect(double ax, double ay, double bx, double by,
+                                     double cx, double cy, double dx, double dy) {
+        int d1 = Orientation.sign(cx, cy, dx, dy, ax, ay);
+        int d2 = Orientation.sign(cx, cy, dx, dy, bx, by);
+        int d3 = Orientation.sign(ax, ay, bx, by, cx, cy);
+        int d4 = Orientation.sign(ax, ay, bx, by, dx, dy);
+        if (d1 * d2 < 0 && d3 * d4 < 0)
+            return true;
+        return (d1 == 0 && onSegment(cx, cy, dx, dy, ax, ay)) || (d2 == 0 && onSegment(cx, cy, dx, dy, bx, by)) ||
+               (d3 == 0 && onSegment(ax, ay, bx, by, cx, cy)) || (d4 == 0 && onSegment(ax, ay, bx, by, dx, dy));
+    }
+
+    /**
+     * @return <code>true</code> if the point (px, py), known to be collinear with (a, b), lies between them
+     */
+    private static boolean onSegment(double ax, double ay, double bx, double by, double px, double py) {
+        return Math.min(ax, bx) <= px && px <= Math.max(ax, bx) && Math.min(ay, by) <= py && py <= Math.max(ay, by);
+    }
+
+    /**
+     * @return the squared distance from the point (px, py) to the closed segment (a, b)
+     */
+    private static double squaredSegmentDistance(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax, dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        double ex = ax + t * dx - px, ey = ay + t * dy - py;
+        return ex * ex + ey * ey;
+    }
+}
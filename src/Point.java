@@ -8,10 +8,49 @@ public interface Point extends Comparable<Point> {
      */
     double[] coordinates();
 
+    /**
+     * Returns a single coordinate of this point. The default implementation reads it from {@link #coordinates()};
+     * implementations that can return it without allocating a new array, such as {@link TwoDPoint} and
+     * {@link ThreeDPoint}, override it.
+     *
+     * @param index the zero-based index of the coordinate (0 for <code>x</code>, 1 for <code>y</code>, and so on).
+     * @return the coordinate of this point at the specified index.
+     * @throws IndexOutOfBoundsException if the index is negative or not less than the dimension of this point.
+     */
+    default double coordinate(int index) {
+        return coordinates()[index];
+    }
+
+    /**
+     * @return the <code>x</code> coordinate of this point.
+     */
+    default double x() {
+        return coordinate(0);
+    }
+
+    /**
+     * @return the <code>y</code> coordinate of this point.
+     */
+    default double y() {
+        return coordinate(1);
+    }
+
+    /**
+     * Returns the <code>z</code> coordinate of this point. A point with fewer than three coordinates lies on the x-y
+     * plane and returns zero here, even though <code>coordinate(2)</code> is out of bounds for it: <code>z()</code>
+     * places every point in three-dimensional space, while {@link #coordinate(int)} only reaches the coordinates that
+     * {@link #coordinates()} returns.
+     *
+     * @return the <code>z</code> coordinate of this point.
+     */
+    default double z() {
+        return coordinates().length > 2 ? coordinate(2) : 0.0;
+    }
+
     double distanceFromOrigin();
 
     @Override
     default int compareTo(Point o) {
-        return (int) Math.floor(this.distanceFromOrigin() - o.distanceFromOrigin());
+        return Double.compare(this.distanceFromOrigin(), o.distanceFromOrigin());
     }
 }
\ No newline at end of file
@@ -0,0 +1,114 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An optional flyweight cache of integer-valued {@link TwoDPoint}s, such as the vertices left behind by
+ * <code>snap()</code>. While enabled, {@link TwoDPoint#of} and everything built on it (including
+ * {@link TwoDPoint#ofDoubles} and snapping) hand out one shared instance per integer (x, y) pair, so layers full of
+ * repeated grid points hold far fewer objects and most <code>equals</code> calls end at the identity check.
+ *
+ * The cache is a fixed-size open-addressing table indexed directly by a hash of the two coordinates. A lookup probes a
+ * few neighbouring slots; on a miss the new point takes an empty slot among them, or else evicts the point in the home
+ * slot. The table never grows, so its memory use is bounded, and it takes no locks: {@link TwoDPoint} is immutable, so
+ * a racing reader sees either the old point or the new one, both of which are correct for their own coordinates.
+ *
+ * Interning is off by default. It is switched on with {@link #setEnabled(boolean)} or by starting the JVM with
+ * <code>-DpointInterner.enabled=true</code>; the table size can be set with <code>-DpointInterner.capacity</code>.
+ */
+public final class PointInterner {
+
+    private static final int PROBES = 4;
+
+    private static final TwoDPoint[] TABLE = new TwoDPoint[tableSize(Integer.getInteger("pointInterner.capacity",
+                                                                                       1 << 16))];
+    private static final int         MASK  = TABLE.length - 1;
+
+    private static volatile boolean enabled = Boolean.getBoolean("pointInterner.enabled");
+
+    private static final LongAdder HITS   = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+
+    private PointInterner() {
+    }
+
+    /**
+     * @return whether {@link TwoDPoint#of} currently interns integer-valued points
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Switches interning on or off. Points interned earlier stay valid either way.
+     */
+    public static void setEnabled(boolean enabled) {
+        PointInterner.enabled = enabled;
+    }
+
+    /**
+     * Returns the shared instance for the specified integer-valued coordinates, creating it if it is not cached. The
+     * coordinates are compared bit for bit, so <code>-0.0</code> and <code>0.0</code> get different instances.
+     *
+     * @throws IllegalArgumentException if a coordinate is not an integer value in the range of an <code>int</code>
+     */
+    public static TwoDPoint intern(double x, double y) {
+        if (!isInternable(x, y))
+            throw new IllegalArgumentException();
+
+        long xBits = Double.doubleToRawLongBits(x), yBits = Double.doubleToRawLongBits(y);
+        int home = hash((int) x, (int) y);
+        int empty = -1;
+        for (int probe = 0; probe < PROBES; probe++) {
+            int slot = (home + probe) & MASK;
+            TwoDPoint point = TABLE[slot];
+            if (point == null) {
+                if (empty < 0)
+                    empty = slot;
+            } else if (Double.doubleToRawLongBits(point.x()) == xBits &&
+                       Double.doubleToRawLongBits(point.y()) == yBits) {
+                HITS.increment();
+                return point;
+            }
+        }
+
+        MISSES.increment();
+        TwoDPoint point = new TwoDPoint(x, y);
+        TABLE[empty >= 0 ? empty : home & MASK] = point;
+        return point;
+    }
+
+    /**
+     * @return <code>true</code> if both coordinates are integer values in the range of an <code>int</code>
+     */
+    static boolean isInternable(double x, double y) {
+        return x == (int) x && y == (int) y;
+    }
+
+    /**
+     * Drops every cached point and resets the counters.
+     */
+    public static void clear() {
+        for (int i = 0; i < TABLE.length; i++)
+            TABLE[i] = null;
+        HITS.reset();
+        MISSES.reset();
+    }
+
+    /** @return the number of lookups answered with a cached instance */
+    public static long hits() { return HITS.sum(); }
+
+    /** @return the number of lookups that had to create a new instance */
+    public static long misses() { return MISSES.sum(); }
+
+    /** @return the number of slots in the table, i.e., the most points that can be cached at once */
+    public static int capacity() { return TABLE.length; }
+
+    private static int hash(int x, int y) {
+        int h = x * 0x9E3779B1 + y * 0x85EBCA77;
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSize(int capacity) {
+        int size = Integer.highestOneBit(Math.max(PROBES, Math.min(capacity, 1 << 30)));
+        return size < capacity ? size << 1 : size;
+    }
+}
@@ -0,0 +1,377 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A static KD-tree for nearest-neighbour and radius queries over a collection of points, which may freely mix
+ * {@link TwoDPoint}s and {@link ThreeDPoint}s. Every point is indexed by its (x, y, z) coordinates, a two-dimensional
+ * point lying in the plane <code>z = 0</code>, so distances between the two kinds are the same as between a
+ * <code>ThreeDPoint</code> and that point lifted into three dimensions.
+ *
+ * The tree is stored implicitly in flat arrays: the points of a subtree occupy a contiguous range, with the splitting
+ * point at the middle of the range, the lesser half before it and the greater half after it. Each range is split on
+ * its axis of widest spread. The tree is built by median partitioning, with disjoint subtrees built in parallel on a
+ * fork/join pool, and queries compare squared distances so that no square root is taken.
+ */
+public class PointKDTree {
+
+    /** Number of points below which a task builds its subtree itself instead of splitting further. */
+    private static final int THRESHOLD = 1 << 13;
+
+    private final Point[]  points;      // in tree order
+    private final int[]    ids;         // position of each point in the input collection, for stable tie-breaking
+    private final double[] xyz;         // x, y, z of each point, in tree order
+    private final byte[]   axes;        // splitting axis of the subtree rooted at each position
+
+    private PointKDTree(Point[] points, int[] ids, double[] xyz, byte[] axes) {
+        this.points = points;
+        this.ids = ids;
+        this.xyz = xyz;
+        this.axes = axes;
+    }
+
+    /**
+     * Builds a tree over the specified points using the common fork/join pool.
+     */
+    public static PointKDTree build(Collection<? extends Point> points) {
+        return build(points, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Builds a tree over the specified points using the specified fork/join pool. The tree holds its own copy of the
+     * coordinates, so it does not see later changes to the collection.
+     */
+    public static PointKDTree build(Collection<? extends Point> points, ForkJoinPool pool) {
+        int n = points.size();
+        Point[] array = new Point[n];
+        int[] ids = new int[n];
+        double[] xyz = new double[3 * n];
+        int i = 0;
+        for (Point p : points) {
+            array[i] = p;
+            ids[i] = i;
+            xyz[3 * i] = p.x();
+            xyz[3 * i + 1] = p.y();
+            xyz[3 * i + 2] = p.z();
+            i++;
+        }
+        PointKDTree tree = new PointKDTree(array, ids, xyz, new byte[n]);
+        if (n <= THRESHOLD)
+            tree.build(0, n);
+        else
+            pool.invoke(tree.new BuildTask(0, n));
+        return tree;
+    }
+
+    /**
+     * @return the number of points in this tree
+     */
+    public int size() {
+        return points.length;
+    }
+
+    /**
+     * @return the point nearest to the specified point, or <code>null</code> if this tree is empty
+     */
+    public Point nearest(Point p) {
+        List<Point> nearest = nearest(p.x(), p.y(), p.z(), 1);
+        return nearest.isEmpty() ? null : nearest.get(0);
+    }
+
+    /**
+     * @return the <code>k</code> points nearest to the specified point, nearest first
+     */
+    public List<Point> nearest(Point p, int k) {
+        return nearest(p.x(), p.y(), p.z(), k);
+    }
+
+    /**
+     * Finds the <code>k</code> points nearest to (x, y, z), or every point if this tree has fewer than <code>k</code>.
+     * Points at equal distances are taken in the order of the collection the tree was built from.
+     *
+     * @return the points found, nearest first
+     * @throws IllegalArgumentException if <code>k</code> is negative
+     */
+    public List<Point> nearest(double x, double y, double z, int k) {
+        if (k < 0)
+            throw new IllegalArgumentException();
+        NeighborHeap heap = new NeighborHeap(Math.min(k, points.length));
+        if (k > 0)
+            nearest(0, points.length, x, y, z, heap);
+
+        int[] found = heap.sortedPositions();
+        List<Point> result = new ArrayList<>(found.length);
+        for (int position : found)
+            result.add(points[position]);
+        return result;
+    }
+
+    /**
+     * @return every point within distance <code>r</code> of the specified point, inclusive, in no particular order
+     */
+    public List<Point> withinRadius(Point p, double r) {
+        return withinRadius(p.x(), p.y(), p.z(), r);
+    }
+
+    /**
+     * @return every point within distance <code>r</code> of (x, y, z), inclusive, in no particular order
+     */
+    public List<Point> withinRadius(double x, double y, double z, double r) {
+        List<Point> found = new ArrayList<>();
+        if (r >= 0)
+            withinRadius(0, points.length, x, y, z, r * r, found);
+        return found;
+    }
+
+    private void nearest(int lo, int hi, double x, double y, double z, NeighborHeap heap) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            heap.offer(squaredDistance(mid, x, y, z), ids[mid], mid);
+
+            int axis = axes[mid];
+            double diff = (axis == 0 ? x : axis == 1 ? y : z) - xyz[3 * mid + axis];
+            // Search the side containing the query first; the other side only if it can still hold a nearer point
+            if (diff < 0) {
+                nearest(lo, mid, x, y, z, heap);
+                if (!heap.accepts(diff * diff))
+                    return;
+                lo = mid + 1;
+            } else {
+                nearest(mid + 1, hi, x, y, z, heap);
+                if (!heap.accepts(diff * diff))
+                    return;
+                hi = mid;
+            }
+        }
+    }
+
+    private void withinRadius(int lo, int hi, double x, double y, double z, double r2, List<Point> found) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (squaredDistance(mid, x, y, z) <= r2)
+                found.add(points[mid]);
+
+            int axis = axes[mid];
+            double diff = (axis == 0 ? x : axis == 1 ? y : z) - xyz[3 * mid + axis];
+            if (diff * diff > r2) {
+                // The ball lies entirely on one side of the splitting plane
+                if (diff < 0) hi = mid;
+                else lo = mid + 1;
+            } else {
+                withinRadius(lo, mid, x, y, z, r2, found);
+                lo = mid + 1;
+            }
+        }
+    }
+
+    private double squaredDistance(int position, double x, double y, double z) {
+        double dx = xyz[3 * position] - x, dy = xyz[3 * position + 1] - y, dz = xyz[3 * position + 2] - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private final class BuildTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int lo, hi;
+
+        BuildTask(int lo, int hi) {
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= THRESHOLD) {
+                build(lo, hi);
+                return;
+            }
+            int mid = split(lo, hi);
+            invokeAll(new BuildTask(lo, mid), new BuildTask(mid + 1, hi));
+        }
+    }
+
+    /**
+     * Builds the subtree over the positions <code>[lo, hi)</code> on the calling thread.
+     */
+    private void build(int lo, int hi) {
+        while (hi - lo > 1) {
+            int mid = split(lo, hi);
+            build(lo, mid);
+            lo = mid + 1;
+        }
+    }
+
+    /**
+     * Picks the axis of widest spread for <code>[lo, hi)</code> and partitions the range around its median on that
+     * axis.
+     *
+     * @return the middle position, which now holds the splitting point
+     */
+    private int split(int lo, int hi) {
+        double[] min = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+        double[] max = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (int i = lo; i < hi; i++) {
+            for (int a = 0; a < 3; a++) {
+                double v = xyz[3 * i + a];
+                if (v < min[a]) min[a] = v;
+                if (v > max[a]) max[a] = v;
+            }
+        }
+        int axis = 0;
+        for (int a = 1; a < 3; a++) {
+            if (max[a] - min[a] > max[axis] - min[axis])
+                axis = a;
+        }
+
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, axis);
+        axes[mid] = (byte) axis;
+        return mid;
+    }
+
+    /**
+     * Quickselect: rearranges <code>[left, right]</code> so that position <code>k</code> holds the point it would
+     * hold if the range were sorted on the axis, with no greater point before it and no lesser point after it. Each
+     * round partitions three ways, so runs of equal coordinates, as on a snapped grid, do not degrade it.
+     */
+    private void select(int left, int right, int k, int axis) {
+        while (right > left) {
+            // Median of three as the pivot
+            int middle = (left + right) >>> 1;
+            double a = value(left, axis), b = value(middle, axis), c = value(right, axis);
+            double pivot = a < b ? (b < c ? b : Math.max(a, c)) : (a < c ? a : Math.max(b, c));
+
+            // [left, lt) < pivot, [lt, i) == pivot, (gt, right] > pivot
+            int lt = left, gt = right, i = left;
+            while (i <= gt) {
+                double v = value(i, axis);
+                if (v < pivot)
+                    swap(i++, lt++);
+                else if (v > pivot)
+                    swap(i, gt--);
+                else
+                    i++;
+            }
+
+            if (k < lt)
+                right = lt - 1;
+            else if (k > gt)
+                left = gt + 1;
+            else
+                return;
+        }
+    }
+
+    private double value(int position, int axis) {
+        return xyz[3 * position + axis];
+    }
+
+    private void swap(int i, int j) {
+        Point p = points[i];
+        points[i] = points[j];
+        points[j] = p;
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+        for (int a = 0; a < 3; a++) {
+            double v = xyz[3 * i + a];
+            xyz[3 * i + a] = xyz[3 * j + a];
+            xyz[3 * j + a] = v;
+        }
+    }
+
+    /**
+     * A bounded max-heap of candidate neighbours keyed by squared distance, and then by input position so that ties
+     * go to the point earliest in the input.
+     */
+    private static final class NeighborHeap {
+        private final double[] distances;
+        private final int[]    ids, positions;
+        private int            size;
+
+        NeighborHeap(int k) {
+            distances = new double[k];
+            ids = new int[k];
+            positions = new int[k];
+        }
+
+        void offer(double distance, int id, int position) {
+            if (size < distances.length) {
+                distances[size] = distance;
+                ids[size] = id;
+                positions[size] = position;
+                siftUp(size++);
+            } else if (size > 0 && greater(distances[0], ids[0], distance, id)) {
+                distances[0] = distance;
+                ids[0] = id;
+                positions[0] = position;
+                siftDown(0);
+            }
+        }
+
+        /**
+         * @return whether a point at the specified squared distance could still enter the heap
+         */
+        boolean accepts(double distance) {
+            return size < distances.length || distance <= distances[0];
+        }
+
+        /**
+         * @return the tree positions held by this heap, nearest first
+         */
+        int[] sortedPositions() {
+            int n = size;
+            int[] sorted = new int[n];
+            while (size > 0) {
+                sorted[--size] = positions[0];
+                swap(0, size);
+                siftDown(0);
+            }
+            size = n;
+            return sorted;
+        }
+
+        private static boolean greater(double distance1, int id1, double distance2, int id2) {
+            int byDistance = Double.compare(distance1, distance2);
+            return byDistance > 0 || (byDistance == 0 && id1 > id2);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!greater(distances[i], ids[i], distances[parent], ids[parent]))
+                    return;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = 2 * i + 1, right = left + 1, largest = i;
+                if (left < size && greater(distances[left], ids[left], distances[largest], ids[largest]))
+                    largest = left;
+                if (right < size && greater(distances[right], ids[right], distances[largest], ids[largest]))
+                    largest = right;
+                if (largest == i)
+                    return;
+                swap(i, largest);
+                i = largest;
+            }
+        }
+
+        private void swap(int i, int j) {
+            double d = distances[i];
+            distances[i] = distances[j];
+            distances[j] = d;
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+            int position = positions[i];
+            positions[i] = positions[j];
+            positions[j] = position;
+        }
+    }
+}
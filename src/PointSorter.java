@@ -0,0 +1,237 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Sorts lists of points, two- and three-dimensional alike, by x-value or by distance from the origin in linear time.
+ * The key of every point is extracted once into a primitive array and mapped to a <code>long</code> whose unsigned
+ * order is that of {@link Double#compare}, and the keys are then sorted with a stable least-significant-digit radix
+ * sort, one byte per pass. A pass whose byte is the same for every key, such as the sign and exponent bytes of keys of
+ * similar magnitude, is skipped.
+ *
+ * Large lists are split into chunks across a fork/join pool. Each pass counts the byte values of every chunk in
+ * parallel, turns the counts into one output position per chunk and byte value, and then scatters every chunk in
+ * parallel; since the positions are laid out chunk by chunk within each byte value, the scatter stays stable and no
+ * two chunks ever write to the same position.
+ */
+public class PointSorter {
+
+    /** Number of points below which a sort runs entirely on the calling thread. */
+    private static final int THRESHOLD = 1 << 16;
+
+    /** Number of points counted and scattered by one task in a parallel pass. */
+    private static final int CHUNK = 1 << 16;
+
+    private static final int RADIX = 256;
+
+    private PointSorter() {
+    }
+
+    /**
+     * Sorts a list of points by increasing x-value, into the same order as {@link Ordering.XLocationPointComparator}
+     * with a stable sort, using the common fork/join pool.
+     *
+     * @param points the list to sort in place
+     */
+    public static <T extends Point> void sortByX(List<T> points) {
+        sortByX(points, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Sorts a list of points by increasing x-value, using the specified fork/join pool.
+     *
+     * @param points the list to sort in place
+     */
+    public static <T extends Point> void sortByX(List<T> points, ForkJoinPool pool) {
+        Object[] array = points.toArray();
+        long[] keys = new long[array.length];
+        for (int i = 0; i < array.length; i++)
+            keys[i] = key(((Point) array[i]).x());
+        permute(points, array, sort(keys, pool));
+    }
+
+    /**
+     * Sorts a list of points by increasing distance from the origin, using the common fork/join pool. The keys are
+     * squared norms, so no square roots are taken; points whose distances round to the same double, and so compare as
+     * equal under {@link Point#compareTo}, are ordered by their exact squared norms.
+     *
+     * @param points the list to sort in place
+     */
+    public static <T extends Point> void sortByDistanceFromOrigin(List<T> points) {
+        sortByDistanceFromOrigin(points, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Sorts a list of points by increasing distance from the origin, using the specified fork/join pool.
+     *
+     * @param points the list to sort in place
+     */
+    public static <T extends Point> void sortByDistanceFromOrigin(List<T> points, ForkJoinPool pool) {
+        Object[] array = points.toArray();
+        long[] keys = new long[array.length];
+        for (int i = 0; i < array.length; i++)
+            keys[i] = key(squaredNorm((Point) array[i]));
+        permute(points, array, sort(keys, pool));
+    }
+
+    /**
+     * @return the squared distance of a point from the origin, treating a two-dimensional point as lying at z = 0
+     */
+    static double squaredNorm(Point point) {
+        if (point instanceof ThreeDPoint) {
+            ThreeDPoint p = (ThreeDPoint) point;
+            return p.x() * p.x() + p.y() * p.y() + p.z() * p.z();
+        }
+        return point.x() * point.x() + point.y() * point.y();
+    }
+
+    /**
+     * Maps a double to a long whose unsigned order is the order of {@link Double#compare}: negative values have all
+     * their bits flipped, which reverses their order, and non-negative values have their sign bit set. NaN maps above
+     * positive infinity, and -0.0 below 0.0.
+     */
+    static long key(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) | Long.MIN_VALUE);
+    }
+
+    /**
+     * Sorts the keys stably.
+     *
+     * @return the indices of the keys in sorted order
+     */
+    static int[] sort(long[] keys, ForkJoinPool pool) {
+        int n = keys.length;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        long[] keyBuffer = new long[n];
+        int[] orderBuffer = new int[n];
+        int chunks = n < THRESHOLD ? 1 : (n + CHUNK - 1) / CHUNK;
+        int[][] counts = new int[chunks][RADIX];
+
+        for (int shift = 0; shift < 64; shift += 8) {
+            Pass pass = new Pass(keys, order, keyBuffer, orderBuffer, counts, shift, n, chunks);
+            pass.run(pool, false);
+            if (!pass.offsets())
+                continue;
+            pass.run(pool, true);
+
+            long[] k = keys;
+            keys = keyBuffer;
+            keyBuffer = k;
+            int[] o = order;
+            order = orderBuffer;
+            orderBuffer = o;
+        }
+        return order;
+    }
+
+    /**
+     * One radix pass over the byte at <code>shift</code>: a counting phase, then a scatter phase from the source
+     * arrays into the destination arrays.
+     */
+    private static final class Pass {
+        final long[]  keys, keyBuffer;
+        final int[]   order, orderBuffer;
+        final int[][] counts;
+        final int     shift, n, chunks;
+
+        Pass(long[] keys, int[] order, long[] keyBuffer, int[] orderBuffer, int[][] counts, int shift, int n,
+             int chunks) {
+            this.keys = keys;
+            this.order = order;
+            this.keyBuffer = keyBuffer;
+            this.orderBuffer = orderBuffer;
+            this.counts = counts;
+            this.shift = shift;
+            this.n = n;
+            this.chunks = chunks;
+        }
+
+        void run(ForkJoinPool pool, boolean scatter) {
+            if (chunks == 1)
+                chunk(0, scatter);
+            else
+                pool.invoke(new ChunkTask(this, 0, chunks, scatter));
+        }
+
+        /**
+         * Turns the counts into the first output position of every chunk for every byte value.
+         *
+         * @return <code>false</code> if every key has the same byte, so that the pass can be skipped
+         */
+        boolean offsets() {
+            int position = 0;
+            for (int digit = 0; digit < RADIX; digit++) {
+                int start = position;
+                for (int c = 0; c < chunks; c++) {
+                    int count = counts[c][digit];
+                    counts[c][digit] = position;
+                    position += count;
+                }
+                if (position - start == n)
+                    return false;
+            }
+            return true;
+        }
+
+        void chunk(int c, boolean scatter) {
+            int from = c * CHUNK, to = chunks == 1 ? n : Math.min(n, from + CHUNK);
+            int[] count = counts[c];
+            if (!scatter) {
+                Arrays.fill(count, 0);
+                for (int i = from; i < to; i++)
+                    count[(int) (keys[i] >>> shift) & 0xFF]++;
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                int p = count[(int) (keys[i] >>> shift) & 0xFF]++;
+                keyBuffer[p] = keys[i];
+                orderBuffer[p] = order[i];
+            }
+        }
+    }
+
+    private static final class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Pass    pass;
+        private final int     from, to;
+        private final boolean scatter;
+
+        ChunkTask(Pass pass, int from, int to, boolean scatter) {
+            this.pass = pass;
+            this.from = from;
+            this.to = to;
+            this.scatter = scatter;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                pass.chunk(from, scatter);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ChunkTask(pass, from, mid, scatter), new ChunkTask(pass, mid, to, scatter));
+        }
+    }
+
+    /**
+     * Rearranges a list into sorted order.
+     *
+     * @param array the elements of the list, as they were when the keys were extracted
+     * @param order the indices into <code>array</code> in sorted order, as returned by {@link #sort}
+     */
+    @SuppressWarnings("unchecked")
+    static <T> void permute(List<T> list, Object[] array, int[] order) {
+        ListIterator<T> it = list.listIterator();
+        for (int i : order) {
+            it.next();
+            it.set((T) array[i]);
+        }
+    }
+}
@@ -0,0 +1,341 @@
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A simple polygon with any number of vertices, three or more, backed by a flat primitive coordinate array
+ * <code>{x0, y0, x1, y1, ...}</code>. Vertices are kept in the same canonical order used by {@link Triangle} and
+ * {@link Quadrilateral}: starting with the vertex with the least x-value (the lower one if two share it), and then
+ * clockwise around that vertex. Since every other vertex lies to the right of the first one, this is a sort by
+ * decreasing slope from the first vertex, which is done with cross products in O(n log n) and never divides.
+ *
+ * Area and perimeter are computed in O(n) with the shoelace formula and a single pass over the edges. Like those of
+ * the other polygonal shapes, the vertices are held in an immutable {@link ShapeVertices} snapshot that is replaced as
+ * a whole when the polygon moves.
+ */
+public class Polygon implements TwoDShape {
+
+    // The current position, replaced as a whole whenever this polygon moves
+    private final AtomicReference<ShapeVertices> vertices = new AtomicReference<>();
+
+    /**
+     * Creates a polygon from pairs of <code>x</code> and <code>y</code> values, as in {@link TwoDPoint#ofDoubles}.
+     *
+     * @throws IllegalArgumentException if the coordinates do not form a valid polygon
+     */
+    public Polygon(double... coordinates) {
+        setPosition(TwoDPoint.ofDoubles(coordinates));
+    }
+
+    public Polygon(List<? extends Point> vertices) {
+        setPosition(vertices);
+    }
+
+    private Polygon(ShapeVertices canonicalVertices) {
+        this.vertices.set(canonicalVertices);
+    }
+
+    /**
+     * Creates a polygon from coordinates that are already known to form a valid polygon in canonical order, such as
+     * those produced by {@link ConvexHull}, skipping <code>isMember</code> and the sort into canonical order.
+     */
+    static Polygon ofCanonical(double[] coordinates) {
+        return new Polygon(new ShapeVertices(coordinates));
+    }
+
+    /**
+     * Sets the position of this polygon to the specified vertices, all of which are used, taken in the canonical
+     * clockwise order described in {@link #getPosition()}.
+     *
+     * @param points the specified list of points.
+     * @throws IllegalArgumentException if a point is not a {@link TwoDPoint} or the points are not a valid polygon
+     */
+    @Override
+    public void setPosition(List<? extends Point> points) {
+        ShapeMetrics.SetPositionEvent event = ShapeMetrics.setPositionStarted(ShapeMetrics.POLYGON, points.size());
+        for (Point p : points) {
+            if (!(p instanceof TwoDPoint))
+                throw new IllegalArgumentException();
+        }
+        if (!isMember(points))
+            throw new IllegalArgumentException();
+
+        double[] coordinates = new double[2 * points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            coordinates[2 * i] = points.get(i).x();
+            coordinates[2 * i + 1] = points.get(i).y();
+        }
+        canonicalize(coordinates, points.size());
+        vertices.set(new ShapeVertices(coordinates));
+        ShapeMetrics.setPositionFinished(event);
+    }
+
+    /**
+     * Retrieve the position of this polygon as a list of points. The points are retrieved in a clockwise manner on the
+     * two-dimensional x-y plane, starting with the point with the least x-value. If two points have the same least
+     * x-value, then the clockwise direction starts with the point with the lower y-value.
+     *
+     * @return the vertices of this polygon, as an unmodifiable list that is not affected when this polygon moves.
+     */
+    @Override
+    public List<? extends Point> getPosition() {
+        return vertices.get().points();
+    }
+
+    /**
+     * @return the current position of this polygon as an immutable snapshot, which later moves do not affect
+     */
+    public ShapeVertices snapshot() {
+        return vertices.get();
+    }
+
+    /**
+     * @return the number of sides of this polygon, which equals its number of vertices
+     */
+    @Override
+    public int numSides() {
+        return vertices.get().size();
+    }
+
+    /**
+     * Checks whether or not a list of vertices forms a valid polygon: there must be at least three vertices, no two of
+     * them may be the same point, and they must not all lie on a single straight line.
+     *
+     * @param vertices the list of vertices to check against, where each vertex is a <code>Point</code> type.
+     * @return <code>true</code> if <code>vertices</code> is a valid collection of points for a polygon, and
+     * <code>false</code> otherwise.
+     */
+    @Override
+    public boolean isMember(List<? extends Point> vertices) {
+        boolean member = isValid(vertices);
+        if (!member)
+            ShapeMetrics.rejected(ShapeMetrics.POLYGON, vertices);
+        return member;
+    }
+
+    private static boolean isValid(List<? extends Point> vertices) {
+        int n = vertices.size();
+        if (n < 3)
+            return false;
+
+        double[] xs = new double[n], ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = vertices.get(i).x();
+            ys[i] = vertices.get(i).y();
+        }
+
+        // Duplicates end up next to each other once sorted by (x, y)
+        int[] order = sortedIndices(n, (i, j) -> {
+            int byX = Double.compare(xs[i], xs[j]);
+            return byX != 0 ? byX : Double.compare(ys[i], ys[j]);
+        });
+        for (int k = 1; k < n; k++) {
+            if (xs[order[k]] == xs[order[k - 1]] && ys[order[k]] == ys[order[k - 1]])
+                return false;
+        }
+
+        // At least one vertex must be off the line through the first two
+        for (int k = 2; k < n; k++) {
+            if (Orientation.sign(xs[0], ys[0], xs[1], ys[1], xs[k], ys[k]) != 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the area of this polygon, rounded to two decimal places like the other shapes
+     */
+    @Override
+    public double area() {
+        ShapeMetrics.areaCalled(ShapeMetrics.POLYGON);
+        ShapeVertices v = vertices.get();
+        double area = v.area;
+        if (Double.isNaN(area)) {
+            ShapeMetrics.cacheMiss();
+            area = Math.round(area(v.array(), v.size()) * 100.0) / 100.0;
+            v.area = area;
+        } else {
+            ShapeMetrics.cacheHit();
+        }
+        return area;
+    }
+
+    /**
+     * @return the perimeter (i.e., the total length of the boundary) of this polygon, rounded to two decimal places
+     */
+    public double perimeter() {
+        ShapeMetrics.perimeterCalled(ShapeMetrics.POLYGON);
+        ShapeVertices v = vertices.get();
+        double perimeter = v.perimeter;
+        if (Double.isNaN(perimeter)) {
+            ShapeMetrics.cacheMiss();
+            perimeter = Math.round(perimeter(v.array(), v.size()) * 100.0) / 100.0;
+            v.perimeter = perimeter;
+        } else {
+            ShapeMetrics.cacheHit();
+        }
+        return perimeter;
+    }
+
+    /**
+     * @return the axis-aligned bounding box of this polygon as <code>{minX, minY, maxX, maxY}</code>
+     */
+    @Override
+    public double[] boundingBox() {
+        ShapeVertices v = vertices.get();
+        double[] box = v.boundingBox;
+        if (box == null) {
+            ShapeMetrics.cacheMiss();
+            box = v.extent();
+            v.boundingBox = box;
+        } else {
+            ShapeMetrics.cacheHit();
+        }
+        return box.clone();
+    }
+
+    /**
+     * @return a copy of the canonical vertex coordinates of this polygon as <code>{x0, y0, x1, y1, ...}</code>
+     */
+    public double[] coordinates() {
+        return vertices.get().coordinates();
+    }
+
+    /**
+     * Reorders the first <code>n</code> vertices of a flat coordinate array in place into canonical order: the vertex
+     * with the least x-value (and least y-value among those) first, followed by the others in decreasing order of their
+     * slope from it. Vertices with equal slope are taken nearest first, except on the ray of least slope, where they
+     * are taken farthest first so that the boundary comes back to the first vertex along that ray.
+     *
+     * @param coordinates the coordinates as <code>{x0, y0, x1, y1, ...}</code>
+     * @param n           the number of vertices to reorder
+     */
+    static void canonicalize(double[] coordinates, int n) {
+        // Move the bottom-left vertex to the front
+        int first = 0;
+        for (int i = 1; i < n; i++) {
+            double x = coordinates[2 * i], y = coordinates[2 * i + 1];
+            if (x < coordinates[2 * first] || (x == coordinates[2 * first] && y < coordinates[2 * first + 1]))
+                first = i;
+        }
+        swap(coordinates, 0, first);
+
+        final double x0 = coordinates[0], y0 = coordinates[1];
+        final double[] copy = coordinates.clone();
+        // Every other vertex has dx >= 0, and dy >= 0 where dx == 0, so vertex i has the greater slope exactly when
+        // (first, i, j) turns clockwise. Vertices of equal slope lie on one ray from the first vertex, where the
+        // nearer one has the lesser x-value, or the lesser y-value if the ray is vertical.
+        int[] order = sortedIndices(n - 1, (i, j) -> {
+            double xi = copy[2 * i + 2], yi = copy[2 * i + 3], xj = copy[2 * j + 2], yj = copy[2 * j + 3];
+            int bySlope = Orientation.sign(x0, y0, xi, yi, xj, yj);
+            if (bySlope != 0)
+                return bySlope;
+            int byX = Double.compare(xi, xj);
+            return byX != 0 ? byX : Double.compare(yi, yj);
+        });
+        // The vertices on the last ray, which share its least slope, are sorted nearest first; reverse them
+        int last = n - 2, start = last;
+        double xl = copy[2 * order[last] + 2], yl = copy[2 * order[last] + 3];
+        while (start > 0 && Orientation.sign(x0, y0, xl, yl, copy[2 * order[start - 1] + 2],
+                                             copy[2 * order[start - 1] + 3]) == 0)
+            start--;
+        for (int i = start, j = last; i < j; i++, j--) {
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+
+        for (int k = 0; k < n - 1; k++) {
+            coordinates[2 * k + 2] = copy[2 * order[k] + 2];
+            coordinates[2 * k + 3] = copy[2 * order[k] + 3];
+        }
+    }
+
+    /**
+     * Computes the unrounded area of the polygon formed by the first <code>n</code> vertices of a flat coordinate
+     * array, taken in order, with the shoelace formula.
+     */
+    static double area(double[] coordinates, int n) {
+        double twiceArea = 0.0;
+        double px = coordinates[2 * n - 2], py = coordinates[2 * n - 1];
+        for (int i = 0; i < n; i++) {
+            double x = coordinates[2 * i], y = coordinates[2 * i + 1];
+            twiceArea += px * y - x * py;
+            px = x;
+            py = y;
+        }
+        return Math.abs(twiceArea) / 2;
+    }
+
+    /**
+     * Computes the unrounded perimeter of the polygon formed by the first <code>n</code> vertices of a flat coordinate
+     * array, taken in order.
+     */
+    static double perimeter(double[] coordinates, int n) {
+        double perimeter = 0.0;
+        double px = coordinates[2 * n - 2], py = coordinates[2 * n - 1];
+        for (int i = 0; i < n; i++) {
+            double x = coordinates[2 * i], y = coordinates[2 * i + 1];
+            perimeter += Math.sqrt((x - px) * (x - px) + (y - py) * (y - py));
+            px = x;
+            py = y;
+        }
+        return perimeter;
+    }
+
+    /**
+     * @return twice the signed area of the triangle (a, b, c): positive if it turns counterclockwise, negative if
+     * clockwise, and zero if the three points are collinear
+     */
+    static double cross(double ax, double ay, double bx, double by, double cx, double cy) {
+        return (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+    }
+
+    private static void swap(double[] coordinates, int i, int j) {
+        double x = coordinates[2 * i], y = coordinates[2 * i + 1];
+        coordinates[2 * i] = coordinates[2 * j];
+        coordinates[2 * i + 1] = coordinates[2 * j + 1];
+        coordinates[2 * j] = x;
+        coordinates[2 * j + 1] = y;
+    }
+
+    interface IndexComparator {
+        int compare(int i, int j);
+    }
+
+    /**
+     * @return the indices <code>0..n-1</code> stably sorted by the specified comparator, without boxing
+     */
+    static int[] sortedIndices(int n, IndexComparator comparator) {
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        mergeSort(order.clone(), order, 0, n, comparator);
+        return order;
+    }
+
+    private static void mergeSort(int[] src, int[] dst, int lo, int hi, IndexComparator comparator) {
+        if (hi - lo < 2)
+            return;
+        int mid = (lo + hi) >>> 1;
+        mergeSort(dst, src, lo, mid, comparator);
+        mergeSort(dst, src, mid, hi, comparator);
+        for (int i = lo, p = lo, q = mid; i < hi; i++) {
+            if (q >= hi || (p < mid && comparator.compare(src[p], src[q]) <= 0))
+                dst[i] = src[p++];
+            else
+                dst[i] = src[q++];
+        }
+    }
+
+    @Override
+    public String toString() {
+        double[] coordinates = vertices.get().array();
+        StringBuilder builder = new StringBuilder("Polygon[");
+        for (int i = 0; i < coordinates.length; i += 2) {
+            if (i > 0)
+                builder.append(", ");
+            builder.append('(').append(coordinates[i]).append(", ").append(coordinates[i + 1]).append(')');
+        }
+        return builder.append(']').toString();
+    }
+}
@@ -1,16 +1,33 @@
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Quadrilateral implements TwoDShape {
 
-    List<TwoDPoint> vertices;
+    // The current position, replaced as a whole whenever this quadrilateral moves
+    private final AtomicReference<ShapeVertices> vertices = new AtomicReference<>();
 
     public Quadrilateral(List<TwoDPoint> vertices) {
-        this.vertices = vertices;
         setPosition(vertices);
     }
 
+    /**
+     * Wraps vertices that are already known to be valid and in canonical order, skipping both the validation and the
+     * reordering done by {@link #setPosition(List)}.
+     */
+    private Quadrilateral(ShapeVertices canonicalVertices) {
+        this.vertices.set(canonicalVertices);
+    }
+
+    /**
+     * Creates a quadrilateral from four vertices that are already valid and in the canonical order of
+     * {@link #getPosition()}, e.g. vertices read back from a snapshot of an existing quadrilateral. No checks are made.
+     */
+    static Quadrilateral ofCanonical(double x1, double y1, double x2, double y2, double x3, double y3,
+                                     double x4, double y4) {
+        return new Quadrilateral(new ShapeVertices(new double[]{x1, y1, x2, y2, x3, y3, x4, y4}));
+    }
+
     /**
      * Sets the position of this quadrilateral according to the first four elements in the specified list of points. The
      * quadrilateral is formed on the basis of these four points taken in a clockwise manner on the two-dimensional
@@ -20,76 +37,19 @@ public class Quadrilateral implements TwoDShape {
      */
     @Override
     public void setPosition(List<? extends Point> points) {
+        ShapeMetrics.SetPositionEvent event = ShapeMetrics.setPositionStarted(ShapeMetrics.QUADRILATERAL,
+                                                                              points.size());
         if (points.size() < 4 || !(points.get(0) instanceof TwoDPoint) || !(points.get(1) instanceof TwoDPoint) ||
                 !(points.get(2) instanceof TwoDPoint) || !(points.get(3) instanceof TwoDPoint) || !isMember(points))
             throw new IllegalArgumentException();
 
-        double x1 = points.get(0).coordinates()[0];
-        double y1 = points.get(0).coordinates()[1];
-        double x2 = points.get(1).coordinates()[0];
-        double y2 = points.get(1).coordinates()[1];
-        double x3 = points.get(2).coordinates()[0];
-        double y3 = points.get(2).coordinates()[1];
-        double x4 = points.get(3).coordinates()[0];
-        double y4 = points.get(3).coordinates()[1];
-
-        List<TwoDPoint> vertices = new ArrayList<>(4);
-        List<Point> copyOfPoints = new ArrayList<>(points);
-
-        // Find 1st pair, located as far to the bottom left as possible
-        double leastXCoord = Math.min(Math.min(x1, x2), Math.min(x3, x4));
-        List<Double> ycoordsPairedWithLeastXCoord = new ArrayList<>(4);
-        if (x1 == leastXCoord) ycoordsPairedWithLeastXCoord.add(y1);
-        if (x2 == leastXCoord) ycoordsPairedWithLeastXCoord.add(y2);
-        if (x3 == leastXCoord) ycoordsPairedWithLeastXCoord.add(y3);
-        if (x4 == leastXCoord) ycoordsPairedWithLeastXCoord.add(y4);
-        vertices.add(new TwoDPoint(leastXCoord, Collections.min(ycoordsPairedWithLeastXCoord)));
-        // Remove the relevant point from the input list for easier calculations later on
-        if (x1 == leastXCoord && y1 == Collections.min(ycoordsPairedWithLeastXCoord)) copyOfPoints.remove(0);
-        else if (x2 == leastXCoord && y2 == Collections.min(ycoordsPairedWithLeastXCoord)) copyOfPoints.remove(1);
-        else if (x3 == leastXCoord && y3 == Collections.min(ycoordsPairedWithLeastXCoord)) copyOfPoints.remove(2);
-        else copyOfPoints.remove(3);
-
-        // Sort by largest to smallest slope with respect to point A for remaining points
-        x1 = leastXCoord;
-        y1 = Collections.min(ycoordsPairedWithLeastXCoord);
-        x2 = copyOfPoints.get(0).coordinates()[0];
-        y2 = copyOfPoints.get(0).coordinates()[1];
-        x3 = copyOfPoints.get(1).coordinates()[0];
-        y3 = copyOfPoints.get(1).coordinates()[1];
-        x4 = copyOfPoints.get(2).coordinates()[0];
-        y4 = copyOfPoints.get(2).coordinates()[1];
-        double m2 = (y2 - y1) / (x2 - x1);
-        double m3 = (y3 - y1) / (x3 - x1);
-        double m4 = (y4 - y1) / (x4 - x1);
-        List<Double> slopes = new ArrayList<>(3);
-        slopes.add(m2);
-        slopes.add(m3);
-        slopes.add(m4);
-        slopes.sort(Collections.reverseOrder());
-
-        // 2nd point - since I have run isMember I can be sure only one slope is infinite (vertical line)
-        if (Double.isNaN(slopes.get(0))) {
-            if (Double.isNaN(m2)) vertices.add(new TwoDPoint(x2, y2));
-            else if (Double.isNaN(m3)) vertices.add(new TwoDPoint(x3, y3));
-            else if (Double.isNaN(m4)) vertices.add(new TwoDPoint(x4, y4));
-        } else {
-            if (slopes.get(0) == m2) vertices.add(new TwoDPoint(x2, y2));
-            else if (slopes.get(0) == m3) vertices.add(new TwoDPoint(x3, y3));
-            else if (slopes.get(0) == m4) vertices.add(new TwoDPoint(x4, y4));
-        }
-
-        // 3rd point
-        if (slopes.get(1) == m2) vertices.add(new TwoDPoint(x2, y2));
-        else if (slopes.get(1) == m3) vertices.add(new TwoDPoint(x3, y3));
-        else if (slopes.get(1) == m4) vertices.add(new TwoDPoint(x4, y4));
-
-        // 4th point
-        if (slopes.get(2) == m2) vertices.add(new TwoDPoint(x2, y2));
-        else if (slopes.get(2) == m3) vertices.add(new TwoDPoint(x3, y3));
-        else if (slopes.get(2) == m4) vertices.add(new TwoDPoint(x4, y4));
+        double[] coordinates = {points.get(0).x(), points.get(0).y(), points.get(1).x(), points.get(1).y(),
+                                points.get(2).x(), points.get(2).y(), points.get(3).x(), points.get(3).y()};
+        // Bottom-left vertex first, then the other three clockwise around it
+        Polygon.canonicalize(coordinates, 4);
 
-        this.vertices = vertices;
+        vertices.set(new ShapeVertices(coordinates));
+        ShapeMetrics.setPositionFinished(event);
     }
 
     /**
@@ -97,11 +57,18 @@ public class Quadrilateral implements TwoDShape {
      * list in a clockwise manner on the two-dimensional x-y plane, starting with the point with the least x-value. If
      * two points have the same least x-value, then the clockwise direction starts with the point with the lower y-value.
      *
-     * @return the retrieved list of points.
+     * @return the retrieved list of points, which is unmodifiable and is not affected when this shape moves.
      */
     @Override
     public List<? extends Point> getPosition() {
-        return vertices;
+        return vertices.get().points();
+    }
+
+    /**
+     * @return the current position of this quadrilateral as an immutable snapshot, which later moves do not affect
+     */
+    public ShapeVertices snapshot() {
+        return vertices.get();
     }
 
     /**
@@ -122,34 +89,22 @@ public class Quadrilateral implements TwoDShape {
      */
     @Override
     public boolean isMember(List<? extends Point> vertices) {
-        double x1 = vertices.get(0).coordinates()[0];
-        double y1 = vertices.get(0).coordinates()[1];
-        double x2 = vertices.get(1).coordinates()[0];
-        double y2 = vertices.get(1).coordinates()[1];
-        double x3 = vertices.get(2).coordinates()[0];
-        double y3 = vertices.get(2).coordinates()[1];
-        double x4 = vertices.get(3).coordinates()[0];
-        double y4 = vertices.get(3).coordinates()[1];
-
-        // Case where at least 2 of the quadrilateral's points are at the same spot
-        if (vertices.get(0).equals(vertices.get(1)) || vertices.get(0).equals(vertices.get(2)) ||
-                vertices.get(0).equals(vertices.get(3)) || vertices.get(1).equals(vertices.get(2)) ||
-                vertices.get(1).equals(vertices.get(3)) || vertices.get(2).equals(vertices.get(3)))
-            return false;
-
-        // Case of a vertical line, for three or more points (infinite slope)
-        if ((x1 == 0 && x2 == 0 && x3 == 0) || (x1 == 0 && x2 == 0 && x4 == 0) || (x1 == 0 && x3 == 0 && x4 == 0) ||
-                                               (x2 == 0 && x3 == 0 && x4 == 0))
-            return false;
-
-        // Get two of the points to form a line, and check to see if either of the remaining two lie on it as well
-        // y = mx + b
-        double m = (y2 - y1) / (x2 - x1);
-        double b = y1 - m * x1;
-        if (y3 == m * x3 + b) return false;
-        if (y4 == m * x4 + b) return false;
+        boolean member = isMember(vertices.get(0).x(), vertices.get(0).y(), vertices.get(1).x(), vertices.get(1).y(),
+                                  vertices.get(2).x(), vertices.get(2).y(), vertices.get(3).x(), vertices.get(3).y());
+        if (!member)
+            ShapeMetrics.rejected(ShapeMetrics.QUADRILATERAL, vertices);
+        return member;
+    }
 
-        return true;
+    /**
+     * Applies the rules of {@link #isMember(List)} to four vertices given by their coordinates.
+     *
+     * @return <code>true</code> if (x1, y1), (x2, y2), (x3, y3) and (x4, y4) form a valid quadrilateral
+     */
+    static boolean isMember(double x1, double y1, double x2, double y2, double x3, double y3, double x4, double y4) {
+        // No three of the points may be in a straight line, which also rules out any two of them coinciding
+        return Orientation.sign(x1, y1, x2, y2, x3, y3) != 0 && Orientation.sign(x1, y1, x2, y2, x4, y4) != 0 &&
+               Orientation.sign(x1, y1, x3, y3, x4, y4) != 0 && Orientation.sign(x2, y2, x3, y3, x4, y4) != 0;
     }
 
     /**
@@ -160,15 +115,46 @@ public class Quadrilateral implements TwoDShape {
      * Snapping is an in-place procedure, and the current instance is modified.
      */
     public void snap() {
-        List<TwoDPoint> verticesCopy = new ArrayList<>(vertices);   // Return this in case vertices should not be modified
-        for (int i = 0; i < 4; i++) {
-            double xcoord = vertices.get(i).coordinates()[0]; // Get just decimal part of a double
-            double ycoord = vertices.get(i).coordinates()[1];
-            vertices.set(i, new TwoDPoint(Math.round(xcoord), Math.round(ycoord)));
+        snapIfValid();
+    }
+
+    /**
+     * Snaps this quadrilateral as {@link #snap()} does.
+     *
+     * @return <code>true</code> if the quadrilateral was moved, and <code>false</code> if it was left unchanged
+     */
+    boolean snapIfValid() {
+        // Retry if another thread moves this quadrilateral between reading its position and publishing the snapped one
+        while (true) {
+            ShapeVertices current = vertices.get();
+            double[] snapped = new double[8];
+            for (int i = 0; i < snapped.length; i++)
+                snapped[i] = Math.round(current.array()[i]);
+            if (!isMember(snapped[0], snapped[1], snapped[2], snapped[3], snapped[4], snapped[5], snapped[6],
+                          snapped[7]))
+                return false;
+            if (vertices.compareAndSet(current, new ShapeVertices(snapped)))
+                return true;
         }
+    }
 
-        // Check that none of the vertices are equal
-        if (!isMember(vertices)) vertices = verticesCopy;
+    /**
+     * Moves the vertices of this quadrilateral, in order, to the eight already-snapped coordinates starting at
+     * <code>offset</code>, unless they would make this quadrilateral invalid. The coordinates must be those of the snapshot
+     * <code>expected</code>, rounded; if another thread has moved this quadrilateral since that snapshot was read, the new
+     * position is snapped instead, so the other thread's move is never overwritten.
+     *
+     * @return <code>true</code> if the quadrilateral was moved, and <code>false</code> if it was left unchanged
+     */
+    boolean moveToSnapped(ShapeVertices expected, double[] snapped, int offset) {
+        boolean valid = isMember(snapped[offset], snapped[offset + 1], snapped[offset + 2], snapped[offset + 3],
+                                 snapped[offset + 4], snapped[offset + 5], snapped[offset + 6], snapped[offset + 7]);
+        if (valid && vertices.compareAndSet(expected,
+                                            new ShapeVertices(Arrays.copyOfRange(snapped, offset, offset + 8))))
+            return true;
+        if (vertices.get() == expected)
+            return false;
+        return snapIfValid();
     }
 
     /**
@@ -176,50 +162,74 @@ public class Quadrilateral implements TwoDShape {
      */
     @Override
     public double area() {
-        // Get coordinates for the four points
-        double x1 = vertices.get(0).coordinates()[0];
-        double y1 = vertices.get(0).coordinates()[1];
-        double x2 = vertices.get(1).coordinates()[0];
-        double y2 = vertices.get(1).coordinates()[1];
-        double x3 = vertices.get(2).coordinates()[0];
-        double y3 = vertices.get(2).coordinates()[1];
-        double x4 = vertices.get(3).coordinates()[0];
-        double y4 = vertices.get(3).coordinates()[1];
-
-        // Get distances of the four lines to calculate semiperimeter s
-        double a = Math.sqrt(Math.pow(x2 - x1, 2) + Math.pow(y2 - y1, 2));   // Distance of line from p1 to p2
-        double b = Math.sqrt(Math.pow(x3 - x2, 2) + Math.pow(y3 - y2, 2));   // Distance of line from p2 to p3
-        double c = Math.sqrt(Math.pow(x4 - x3, 2) + Math.pow(y4 - y3, 2));   // Distance of line from p3 to p4
-        double d = Math.sqrt(Math.pow(x1 - x4, 2) + Math.pow(y1 - y4, 2));   // Distance of line from p4 to p1
-        double s = (a + b + c + d) / 2;
-
-        // Find angles at vertex 1 and 3
-        double p24 = Math.sqrt(Math.pow(x4 - x2, 2) + Math.pow(y4 - y2, 2)); // Distance of line from p2 to p4
-        double alpha = Math.acos((Math.pow(a, 2) + Math.pow(d, 2) - Math.pow(p24, 2)) /
-                                 (2 * a * d));
-        double gamma = Math.acos((Math.pow(b, 2) + Math.pow(c, 2) - Math.pow(p24, 2)) /
-                (2 * b * c));
-
-        // Apply Bretschenider's formula
-        // Rounding to cut off at 2 decimal places
-        return Math.round(Math.sqrt((s - a) * (s - b) * (s - c) * (s - d) - (a * b * c * d * Math.pow(Math.cos((alpha + gamma) / 2), 2))) * 100.0) / 100.0;
+        ShapeMetrics.areaCalled(ShapeMetrics.QUADRILATERAL);
+        ShapeVertices v = vertices.get();
+        double area = v.area;
+        if (Double.isNaN(area)) {
+            ShapeMetrics.cacheMiss();
+            area = area(v.x(0), v.y(0), v.x(1), v.y(1), v.x(2), v.y(2), v.x(3), v.y(3));
+            v.area = area;
+        } else {
+            ShapeMetrics.cacheHit();
+        }
+        return area;
     }
 
     /**
      * @return the perimeter (i.e., the total length of the boundary) of this quadrilateral
      */
     public double perimeter() {
-        double output = 0.0;
+        ShapeMetrics.perimeterCalled(ShapeMetrics.QUADRILATERAL);
+        ShapeVertices v = vertices.get();
+        double perimeter = v.perimeter;
+        if (Double.isNaN(perimeter)) {
+            ShapeMetrics.cacheMiss();
+            perimeter = perimeter(v.x(0), v.y(0), v.x(1), v.y(1), v.x(2), v.y(2), v.x(3), v.y(3));
+            v.perimeter = perimeter;
+        } else {
+            ShapeMetrics.cacheHit();
+        }
+        return perimeter;
+    }
 
-        // Get coordinates for the four points
-        double x1 = vertices.get(0).coordinates()[0];
-        double y1 = vertices.get(0).coordinates()[1];
-        double x2 = vertices.get(1).coordinates()[0];
-        double y2 = vertices.get(1).coordinates()[1];
-        double x3 = vertices.get(2).coordinates()[0];
-        double y3 = vertices.get(2).coordinates()[1];
-        double x4 = vertices.get(3).coordinates()[0];
-        double y4 = vertices.get(3).coordinates()[1];
+    /**
+     * @return the axis-aligned bounding box of this quadrilateral as <code>{minX, minY, maxX, maxY}</code>
+     */
+    @Override
+    public double[] boundingBox() {
+        ShapeVertices v = vertices.get();
+        double[] box = v.boundingBox;
+        if (box == null) {
+            ShapeMetrics.cacheMiss();
+            box = v.extent();
+            v.boundingBox = box;
+        } else {
+            ShapeMetrics.cacheHit();
+        }
+        return box.clone();
+    }
+
+    /**
+     * Computes the area of the quadrilateral with the four specified vertices, taken in order around its boundary and
+     * rounded to two decimal places.
+     *
+     * @return the area of the quadrilateral formed by (x1, y1), (x2, y2), (x3, y3) and (x4, y4)
+     */
+    static double area(double x1, double y1, double x2, double y2, double x3, double y3, double x4, double y4) {
+        // Shoelace formula, which holds for any simple quadrilateral, convex or not
+        double twiceArea = (x1 * y2 - x2 * y1) + (x2 * y3 - x3 * y2) + (x3 * y4 - x4 * y3) + (x4 * y1 - x1 * y4);
+        // Rounding to cut off at 2 decimal places
+        return Math.round(Math.abs(twiceArea) / 2 * 100.0) / 100.0;
+    }
+
+    /**
+     * Computes the perimeter of the quadrilateral with the four specified vertices, taken in order around its boundary
+     * and rounded to two decimal places.
+     *
+     * @return the perimeter of the quadrilateral formed by (x1, y1), (x2, y2), (x3, y3) and (x4, y4)
+     */
+    static double perimeter(double x1, double y1, double x2, double y2, double x3, double y3, double x4, double y4) {
+        double output = 0.0;
 
         // Get distances of the four lines in the quadrilateral
         output += Math.sqrt(Math.pow(x2 - x1, 2) + Math.pow(y2 - y1, 2));   // Distance of line from p1 to p2
@@ -233,14 +243,15 @@ public class Quadrilateral implements TwoDShape {
     @Override
     public String toString() {
         // Get coordinates for the four points
-        double x1 = vertices.get(0).coordinates()[0];
-        double y1 = vertices.get(0).coordinates()[1];
-        double x2 = vertices.get(1).coordinates()[0];
-        double y2 = vertices.get(1).coordinates()[1];
-        double x3 = vertices.get(2).coordinates()[0];
-        double y3 = vertices.get(2).coordinates()[1];
-        double x4 = vertices.get(3).coordinates()[0];
-        double y4 = vertices.get(3).coordinates()[1];
+        ShapeVertices v = vertices.get();
+        double x1 = v.x(0);
+        double y1 = v.y(0);
+        double x2 = v.x(1);
+        double y2 = v.y(1);
+        double x3 = v.x(2);
+        double y3 = v.y(2);
+        double x4 = v.x(3);
+        double y4 = v.y(3);
 
         return "Quadrilateral[(" + x1 + ", " + y1 + "), (" + x2 + ", " + y2 + "), " +
                 "(" + x3 + ", " + y3 + "), (" + x4 + ", " + y4 + ")]";
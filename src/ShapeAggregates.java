@@ -0,0 +1,571 @@
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Running aggregates of the areas and perimeters of a collection of two-dimensional shapes: count, sum, minimum,
+ * maximum, mean and a histogram, grouped by number of sides ({@link TwoDShape#numSides()}) and by x-location bucket.
+ * Bucket <code>b</code> holds the shapes whose least x-value, as used by {@link Ordering.XLocationShapeComparator},
+ * lies in <code>[b * bucketWidth, (b + 1) * bucketWidth)</code>.
+ *
+ * The initial collection is aggregated as a fork/join reduction: every task measures its own range of shapes into its
+ * own primitive accumulators, and the partial results are merged as the tasks join. After that the aggregates are
+ * maintained incrementally: adding, removing or re-measuring a shape only updates the one group it leaves and the one
+ * it joins. A minimum or maximum that a removal invalidates is recomputed from the group's remaining shapes the next
+ * time it is read. Sums are updated by addition and subtraction, so after many updates they may differ from a fresh
+ * aggregation in the last few bits.
+ *
+ * Shapes are tracked by identity. Any number of threads may query the aggregates at once; updates take an exclusive
+ * lock. A shape moved directly with {@link TwoDShape#setPosition(List)} or <code>snap()</code> keeps its old
+ * measurements until {@link #update(TwoDShape)} is called, whereas {@link #move} moves and re-measures it in one step.
+ */
+public class ShapeAggregates {
+
+    /** Number of shapes below which a task measures and accumulates its range itself. */
+    private static final int THRESHOLD = 2048;
+
+    /** Number of histogram buckets; see {@link Stats#areaHistogram()}. */
+    static final int HISTOGRAM_BUCKETS = 64;
+
+    /** Power of two at which histogram bucket 1 starts. */
+    private static final int HISTOGRAM_MIN_EXPONENT = -31;
+
+    /**
+     * A group of shapes with the same number of sides and x-location bucket. Groups are ordered by number of sides,
+     * then by bucket.
+     */
+    public static final class Group implements Comparable<Group> {
+        private final int  sides;
+        private final long bucket;
+
+        Group(int sides, long bucket) {
+            this.sides = sides;
+            this.bucket = bucket;
+        }
+
+        /** @return the number of sides of the shapes in this group */
+        public int sides() { return sides; }
+
+        /** @return the x-location bucket of the shapes in this group */
+        public long bucket() { return bucket; }
+
+        @Override
+        public int compareTo(Group o) {
+            int c = Integer.compare(sides, o.sides);
+            return c != 0 ? c : Long.compare(bucket, o.bucket);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Group))
+                return false;
+            Group g = (Group) o;
+            return sides == g.sides && bucket == g.bucket;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * sides + Long.hashCode(bucket);
+        }
+
+        @Override
+        public String toString() {
+            return "Group[sides=" + sides + ", bucket=" + bucket + "]";
+        }
+    }
+
+    /** A shape's group and measurements, as they were when it was last measured. */
+    private static final class Measurement {
+        final TwoDShape shape;
+        final Group     group;
+        final double    area, perimeter;
+
+        Measurement(TwoDShape shape, double bucketWidth) {
+            Point first = shape.getPosition().get(0);
+            this.shape = shape;
+            this.group = new Group(shape.numSides(), (long) Math.floor(Ordering.xLocation(shape, first) / bucketWidth));
+            this.area = shape.area();
+            this.perimeter = perimeter(shape);
+        }
+    }
+
+    /** Primitive running aggregates of one group, or of part of one group during the initial reduction. */
+    private static final class Accumulator {
+        long         count;
+        double       areaSum, areaMin = Double.POSITIVE_INFINITY, areaMax = Double.NEGATIVE_INFINITY;
+        double       perimeterSum, perimeterMin = Double.POSITIVE_INFINITY, perimeterMax = Double.NEGATIVE_INFINITY;
+        final long[] areaHistogram      = new long[HISTOGRAM_BUCKETS];
+        final long[] perimeterHistogram = new long[HISTOGRAM_BUCKETS];
+
+        // Only kept once the accumulator belongs to a ShapeAggregates, to recompute extremes after removals
+        Set<Measurement> members;
+        boolean          extremesStale;
+
+        void add(Measurement m) {
+            count++;
+            areaSum += m.area;
+            areaMin = Math.min(areaMin, m.area);
+            areaMax = Math.max(areaMax, m.area);
+            perimeterSum += m.perimeter;
+            perimeterMin = Math.min(perimeterMin, m.perimeter);
+            perimeterMax = Math.max(perimeterMax, m.perimeter);
+            areaHistogram[bucket(m.area)]++;
+            perimeterHistogram[bucket(m.perimeter)]++;
+            if (members != null)
+                members.add(m);
+        }
+
+        void remove(Measurement m) {
+            count--;
+            areaSum -= m.area;
+            perimeterSum -= m.perimeter;
+            areaHistogram[bucket(m.area)]--;
+            perimeterHistogram[bucket(m.perimeter)]--;
+            members.remove(m);
+            if (m.area == areaMin || m.area == areaMax || m.perimeter == perimeterMin || m.perimeter == perimeterMax)
+                extremesStale = true;
+        }
+
+        void merge(Accumulator o) {
+            count += o.count;
+            areaSum += o.areaSum;
+            areaMin = Math.min(areaMin, o.areaMin);
+            areaMax = Math.max(areaMax, o.areaMax);
+            perimeterSum += o.perimeterSum;
+            perimeterMin = Math.min(perimeterMin, o.perimeterMin);
+            perimeterMax = Math.max(perimeterMax, o.perimeterMax);
+            for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+                areaHistogram[i] += o.areaHistogram[i];
+                perimeterHistogram[i] += o.perimeterHistogram[i];
+            }
+        }
+
+        void refreshExtremes() {
+            if (!extremesStale)
+                return;
+            areaMin = perimeterMin = Double.POSITIVE_INFINITY;
+            areaMax = perimeterMax = Double.NEGATIVE_INFINITY;
+            for (Measurement m : members) {
+                areaMin = Math.min(areaMin, m.area);
+                areaMax = Math.max(areaMax, m.area);
+                perimeterMin = Math.min(perimeterMin, m.perimeter);
+                perimeterMax = Math.max(perimeterMax, m.perimeter);
+            }
+            extremesStale = false;
+        }
+    }
+
+    private final double                      bucketWidth;
+    private final Map<TwoDShape, Measurement> measurements = new IdentityHashMap<>();
+    private final Map<Group, Accumulator>     groups       = new TreeMap<>();
+    private final ReadWriteLock               lock         = new ReentrantReadWriteLock();
+
+    /**
+     * Creates empty aggregates.
+     *
+     * @param bucketWidth the width of each x-location bucket
+     * @throws IllegalArgumentException if the bucket width is not positive and finite
+     */
+    public ShapeAggregates(double bucketWidth) {
+        if (!(bucketWidth > 0) || Double.isInfinite(bucketWidth))
+            throw new IllegalArgumentException();
+        this.bucketWidth = bucketWidth;
+    }
+
+    /**
+     * Creates aggregates of the specified shapes, measuring them in parallel on the common fork/join pool.
+     *
+     * @throws IllegalArgumentException if the bucket width is not positive and finite
+     */
+    public ShapeAggregates(Collection<? extends TwoDShape> shapes, double bucketWidth) {
+        this(shapes, bucketWidth, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates aggregates of the specified shapes, measuring them in parallel on the specified fork/join pool. A shape
+     * that occurs more than once in the collection is counted once.
+     *
+     * @throws IllegalArgumentException if the bucket width is not positive and finite
+     */
+    public ShapeAggregates(Collection<? extends TwoDShape> shapes, double bucketWidth, ForkJoinPool pool) {
+        this(bucketWidth);
+        Map<TwoDShape, Boolean> distinct = new IdentityHashMap<>();
+        for (TwoDShape shape : shapes)
+            distinct.put(shape, Boolean.TRUE);
+        TwoDShape[] array = distinct.keySet().toArray(new TwoDShape[0]);
+        Measurement[] measured = new Measurement[array.length];
+        AggregateTask task = new AggregateTask(array, measured, bucketWidth, 0, array.length);
+        Map<Group, Accumulator> partial = array.length <= THRESHOLD ? task.compute() : pool.invoke(task);
+        for (Map.Entry<Group, Accumulator> entry : partial.entrySet()) {
+            Accumulator accumulator = entry.getValue();
+            accumulator.members = new HashSet<>();
+            groups.put(entry.getKey(), accumulator);
+        }
+        for (Measurement m : measured) {
+            measurements.put(m.shape, m);
+            groups.get(m.group).members.add(m);
+        }
+    }
+
+    /**
+     * Measures the shapes <code>[from, to)</code> into per-group accumulators of its own, splitting the range while it
+     * is large and merging the halves' accumulators as they join.
+     */
+    private static final class AggregateTask extends RecursiveTask<Map<Group, Accumulator>> {
+        private static final long serialVersionUID = 1L;
+
+        private final TwoDShape[]   shapes;
+        private final Measurement[] measured;
+        private final double        bucketWidth;
+        private final int           from, to;
+
+        AggregateTask(TwoDShape[] shapes, Measurement[] measured, double bucketWidth, int from, int to) {
+            this.shapes = shapes;
+            this.measured = measured;
+            this.bucketWidth = bucketWidth;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Map<Group, Accumulator> compute() {
+            if (to - from <= THRESHOLD) {
+                Map<Group, Accumulator> accumulators = new TreeMap<>();
+                for (int i = from; i < to; i++) {
+                    Measurement m = measured[i] = new Measurement(shapes[i], bucketWidth);
+                    accumulators.computeIfAbsent(m.group, g -> new Accumulator()).add(m);
+                }
+                return accumulators;
+            }
+            int mid = (from + to) >>> 1;
+            AggregateTask left = new AggregateTask(shapes, measured, bucketWidth, from, mid);
+            left.fork();
+            Map<Group, Accumulator> right = new AggregateTask(shapes, measured, bucketWidth, mid, to).compute();
+            Map<Group, Accumulator> merged = left.join();
+            for (Map.Entry<Group, Accumulator> entry : right.entrySet()) {
+                Accumulator accumulator = merged.get(entry.getKey());
+                if (accumulator == null)
+                    merged.put(entry.getKey(), entry.getValue());
+                else
+                    accumulator.merge(entry.getValue());
+            }
+            return merged;
+        }
+    }
+
+    /**
+     * @return the width of each x-location bucket
+     */
+    public double bucketWidth() {
+        return bucketWidth;
+    }
+
+    /**
+     * @return the number of shapes aggregated
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return measurements.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the specified shape under its current measurements. Adding a shape that is already aggregated has the same
+     * effect as {@link #update(TwoDShape)}.
+     */
+    public void add(TwoDShape shape) {
+        Measurement m = new Measurement(shape, bucketWidth);
+        lock.writeLock().lock();
+        try {
+            Measurement old = measurements.put(shape, m);
+            if (old != null)
+                leave(old);
+            join(m);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the specified shape from the aggregates.
+     *
+     * @return <code>true</code> if the shape was aggregated
+     */
+    public boolean remove(TwoDShape shape) {
+        lock.writeLock().lock();
+        try {
+            Measurement old = measurements.remove(shape);
+            if (old == null)
+                return false;
+            leave(old);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Re-measures the specified shape. This must be called after an aggregated shape has been moved with
+     * {@link TwoDShape#setPosition(List)} or <code>snap()</code>.
+     *
+     * @return <code>true</code> if the shape was aggregated
+     */
+    public boolean update(TwoDShape shape) {
+        lock.writeLock().lock();
+        try {
+            if (!measurements.containsKey(shape))
+                return false;
+            Measurement m = new Measurement(shape, bucketWidth);
+            leave(measurements.put(shape, m));
+            join(m);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves a shape with {@link TwoDShape#setPosition(List)} and re-measures it, so that no reader sees the new
+     * position under old measurements.
+     *
+     * @throws IllegalArgumentException if the shape rejects the points, in which case it is left where it was
+     */
+    public void move(TwoDShape shape, List<? extends Point> points) {
+        lock.writeLock().lock();
+        try {
+            shape.setPosition(points);
+            if (measurements.containsKey(shape)) {
+                Measurement m = new Measurement(shape, bucketWidth);
+                leave(measurements.put(shape, m));
+                join(m);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the aggregates of every shape
+     */
+    public Stats total() {
+        lock.readLock().lock();
+        try {
+            Accumulator total = new Accumulator();
+            for (Accumulator accumulator : groups.values())
+                total.merge(fresh(accumulator));
+            return new Stats(total);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the aggregates of the specified group, which are empty if no shape is in it
+     */
+    public Stats group(int sides, long bucket) {
+        lock.readLock().lock();
+        try {
+            Accumulator accumulator = groups.get(new Group(sides, bucket));
+            return new Stats(accumulator == null ? new Accumulator() : fresh(accumulator));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the aggregates of every non-empty group, by number of sides and then x-location bucket
+     */
+    public SortedMap<Group, Stats> byGroup() {
+        lock.readLock().lock();
+        try {
+            SortedMap<Group, Stats> result = new TreeMap<>();
+            for (Map.Entry<Group, Accumulator> entry : groups.entrySet())
+                result.put(entry.getKey(), new Stats(fresh(entry.getValue())));
+            return Collections.unmodifiableSortedMap(result);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the aggregates of the shapes with each number of sides, over all x-location buckets
+     */
+    public SortedMap<Integer, Stats> bySides() {
+        lock.readLock().lock();
+        try {
+            SortedMap<Integer, Accumulator> merged = new TreeMap<>();
+            for (Map.Entry<Group, Accumulator> entry : groups.entrySet())
+                merged.computeIfAbsent(entry.getKey().sides, s -> new Accumulator()).merge(fresh(entry.getValue()));
+            SortedMap<Integer, Stats> result = new TreeMap<>();
+            for (Map.Entry<Integer, Accumulator> entry : merged.entrySet())
+                result.put(entry.getKey(), new Stats(entry.getValue()));
+            return Collections.unmodifiableSortedMap(result);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the aggregates of the shapes in each x-location bucket, over all numbers of sides
+     */
+    public SortedMap<Long, Stats> byBucket() {
+        lock.readLock().lock();
+        try {
+            SortedMap<Long, Accumulator> merged = new TreeMap<>();
+            for (Map.Entry<Group, Accumulator> entry : groups.entrySet())
+                merged.computeIfAbsent(entry.getKey().bucket, b -> new Accumulator()).merge(fresh(entry.getValue()));
+            SortedMap<Long, Stats> result = new TreeMap<>();
+            for (Map.Entry<Long, Accumulator> entry : merged.entrySet())
+                result.put(entry.getKey(), new Stats(entry.getValue()));
+            return Collections.unmodifiableSortedMap(result);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void join(Measurement m) {
+        Accumulator accumulator = groups.get(m.group);
+        if (accumulator == null) {
+            accumulator = new Accumulator();
+            accumulator.members = new HashSet<>();
+            groups.put(m.group, accumulator);
+        }
+        accumulator.add(m);
+    }
+
+    private void leave(Measurement m) {
+        Accumulator accumulator = groups.get(m.group);
+        if (accumulator.count == 1)
+            groups.remove(m.group);
+        else
+            accumulator.remove(m);
+    }
+
+    /**
+     * Recomputes the extremes of an accumulator if a removal invalidated them. Readers holding the read lock may race
+     * to do this; the accumulator is locked so that only one of them does, and all of them see the result.
+     *
+     * @return the accumulator
+     */
+    private static Accumulator fresh(Accumulator accumulator) {
+        synchronized (accumulator) {
+            accumulator.refreshExtremes();
+        }
+        return accumulator;
+    }
+
+    /**
+     * @return the histogram bucket of the specified non-negative value
+     */
+    static int bucket(double value) {
+        if (!(value >= 0x1p-31))
+            return 0;
+        return Math.min(HISTOGRAM_BUCKETS - 1, Math.getExponent(value) - HISTOGRAM_MIN_EXPONENT + 1);
+    }
+
+    /**
+     * @return the perimeter of the specified shape, which for a shape other than a {@link CircularShape}, triangle,
+     * quadrilateral or polygon is the length of the closed boundary through the points of its <code>getPosition()</code>
+     */
+    static double perimeter(TwoDShape shape) {
+        if (shape instanceof Circle)
+            return ((Circle) shape).perimeter();
+        if (shape instanceof CircularShape)
+            return Circle.perimeter(((CircularShape) shape).getRadius());
+        if (shape instanceof Triangle)
+            return ((Triangle) shape).perimeter();
+        if (shape instanceof Quadrilateral)
+            return ((Quadrilateral) shape).perimeter();
+        if (shape instanceof Polygon)
+            return ((Polygon) shape).perimeter();
+        List<? extends Point> points = shape.getPosition();
+        double perimeter = 0.0;
+        for (int i = 0, n = points.size(); i < n; i++) {
+            Point a = points.get(i), b = points.get((i + 1) % n);
+            perimeter += Math.hypot(b.x() - a.x(), b.y() - a.y());
+        }
+        return perimeter;
+    }
+
+    /**
+     * An immutable copy of the aggregates of a set of shapes.
+     */
+    public static final class Stats {
+        private final long   count;
+        private final double areaSum, areaMin, areaMax, perimeterSum, perimeterMin, perimeterMax;
+        private final long[] areaHistogram, perimeterHistogram;
+
+        Stats(Accumulator a) {
+            this.count = a.count;
+            this.areaSum = a.areaSum;
+            this.areaMin = a.count == 0 ? Double.NaN : a.areaMin;
+            this.areaMax = a.count == 0 ? Double.NaN : a.areaMax;
+            this.perimeterSum = a.perimeterSum;
+            this.perimeterMin = a.count == 0 ? Double.NaN : a.perimeterMin;
+            this.perimeterMax = a.count == 0 ? Double.NaN : a.perimeterMax;
+            this.areaHistogram = a.areaHistogram.clone();
+            this.perimeterHistogram = a.perimeterHistogram.clone();
+        }
+
+        /** @return the number of shapes */
+        public long count() { return count; }
+
+        /** @return the total area */
+        public double areaSum() { return areaSum; }
+
+        /** @return the least area, or <code>NaN</code> if there are no shapes */
+        public double areaMin() { return areaMin; }
+
+        /** @return the greatest area, or <code>NaN</code> if there are no shapes */
+        public double areaMax() { return areaMax; }
+
+        /** @return the mean area, or <code>NaN</code> if there are no shapes */
+        public double areaMean() { return count == 0 ? Double.NaN : areaSum / count; }
+
+        /** @return the total perimeter */
+        public double perimeterSum() { return perimeterSum; }
+
+        /** @return the least perimeter, or <code>NaN</code> if there are no shapes */
+        public double perimeterMin() { return perimeterMin; }
+
+        /** @return the greatest perimeter, or <code>NaN</code> if there are no shapes */
+        public double perimeterMax() { return perimeterMax; }
+
+        /** @return the mean perimeter, or <code>NaN</code> if there are no shapes */
+        public double perimeterMean() { return count == 0 ? Double.NaN : perimeterSum / count; }
+
+        /**
+         * Returns a histogram of the areas with one bucket per power of two: bucket <code>0</code> counts areas less
+         * than <code>2^-31</code>, bucket <code>i</code> from 1 to 62 counts areas of at least <code>2^(i-32)</code>
+         * and less than <code>2^(i-31)</code>, and bucket <code>63</code> counts areas of at least <code>2^31</code>.
+         *
+         * @return a copy of the bucket counts
+         */
+        public long[] areaHistogram() { return areaHistogram.clone(); }
+
+        /**
+         * @return a copy of the bucket counts of a histogram of the perimeters, with the buckets of
+         * {@link #areaHistogram()}
+         */
+        public long[] perimeterHistogram() { return perimeterHistogram.clone(); }
+
+        @Override
+        public String toString() {
+            return "Stats[count=" + count + ", area=" + areaSum + " (min " + areaMin + ", max " + areaMax
+                   + "), perimeter=" + perimeterSum + " (min " + perimeterMin + ", max " + perimeterMax + ")]";
+        }
+    }
+}
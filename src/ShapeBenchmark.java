@@ -0,0 +1,221 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A small self-contained micro-benchmark harness for the hot paths of the shape classes: construction (and therefore
+ * the canonical ordering in <code>setPosition</code>), <code>isMember</code>, <code>area()</code>,
+ * <code>perimeter()</code>, <code>snap()</code>, the comparators in {@link Ordering}, natural-order sorting and
+ * {@link Ordering#printAllAndReturnLeast}.
+ *
+ * Every benchmark is warmed up before it is measured, and reports both the average time per operation and the number
+ * of bytes allocated per operation on the measuring thread, so that allocation regressions show up next to latency
+ * regressions. Run it with the list sizes to benchmark as arguments, e.g. <code>java ShapeBenchmark 1000 1000000
+ * 10000000</code>; without arguments only the 1K size is used.
+ */
+public class ShapeBenchmark {
+
+    private static final int WARMUP_ROUNDS      = 5;
+    private static final int MEASUREMENT_ROUNDS = 10;
+    private static final int BATCH              = 10_000;
+
+    /** Results are folded into this field so that the JIT cannot eliminate the measured work. */
+    static volatile double sink;
+
+    private interface Body {
+        double run(int i);
+    }
+
+    public static void main(String[] args) {
+        int[] sizes = args.length == 0 ? new int[]{1_000} : new int[args.length];
+        for (int i = 0; i < args.length; i++)
+            sizes[i] = Integer.parseInt(args[i]);
+
+        Random random = new Random(216);
+        List<TwoDPoint> triangleVertices = randomTriangle(random);
+        List<TwoDPoint> quadVertices = randomQuadrilateral(random);
+        Triangle triangle = new Triangle(triangleVertices);
+        Quadrilateral quad = new Quadrilateral(quadVertices);
+        Circle circle = new Circle(random.nextDouble(), random.nextDouble(), 1 + random.nextDouble());
+
+        System.out.printf("%-40s %10s %14s %14s%n", "benchmark", "size", "ns/op", "bytes/op");
+        measure("Triangle.<init>", 1, i -> new Triangle(triangleVertices).numSides());
+        measure("Quadrilateral.<init>", 1, i -> new Quadrilateral(quadVertices).numSides());
+        measure("Triangle.isMember", 1, i -> triangle.isMember(triangleVertices) ? 1 : 0);
+        measure("Quadrilateral.isMember", 1, i -> quad.isMember(quadVertices) ? 1 : 0);
+        // Shapes memoize their area and perimeter, so the computations themselves are measured on the static kernels
+        double radius = circle.getRadius();
+        ShapeVertices tv = triangle.snapshot(), qv = quad.snapshot();
+        measure("Circle.area", 1, i -> Circle.area(radius));
+        measure("Triangle.area", 1, i -> Triangle.area(tv.x(0), tv.y(0), tv.x(1), tv.y(1), tv.x(2), tv.y(2)));
+        measure("Quadrilateral.area", 1, i -> Quadrilateral.area(qv.x(0), qv.y(0), qv.x(1), qv.y(1), qv.x(2), qv.y(2),
+                                                                 qv.x(3), qv.y(3)));
+        measure("Triangle.perimeter", 1, i -> Triangle.perimeter(tv.x(0), tv.y(0), tv.x(1), tv.y(1), tv.x(2), tv.y(2)));
+        measure("Quadrilateral.perimeter", 1, i -> Quadrilateral.perimeter(qv.x(0), qv.y(0), qv.x(1), qv.y(1), qv.x(2),
+                                                                           qv.y(2), qv.x(3), qv.y(3)));
+        measure("Triangle.area (memoized)", 1, i -> triangle.area());
+        measure("Quadrilateral.area (memoized)", 1, i -> quad.area());
+        measure("Triangle.snap", 1, i -> {
+            Triangle t = new Triangle(triangleVertices);
+            t.snap();
+            return t.area();
+        });
+        measure("Quadrilateral.snap", 1, i -> {
+            Quadrilateral q = new Quadrilateral(quadVertices);
+            q.snap();
+            return q.area();
+        });
+
+        for (int size : sizes) {
+            List<TwoDShape> shapes = randomShapes(random, size);
+            List<Point> points = randomPoints(random, size);
+            AbstractPrinter<TwoDShape> discard = new AbstractPrinter<TwoDShape>() {
+                @Override
+                void print(TwoDShape twoDShape) {
+                    sink += twoDShape.numSides();
+                }
+            };
+
+            measure("sort(XLocationShapeComparator)", size, i -> {
+                List<TwoDShape> copy = new ArrayList<>(shapes);
+                copy.sort(new Ordering.XLocationShapeComparator());
+                return copy.get(0).area();
+            });
+            measure("Ordering.sortByXLocation", size, i -> {
+                List<TwoDShape> copy = new ArrayList<>(shapes);
+                Ordering.sortByXLocation(copy);
+                return copy.get(0).area();
+            });
+            measure("sort(XLocationPointComparator)", size, i -> {
+                List<Point> copy = new ArrayList<>(points);
+                copy.sort(new Ordering.XLocationPointComparator());
+                return copy.get(0).x();
+            });
+            measure("Collections.sort(shapes)", size, i -> {
+                List<TwoDShape> copy = new ArrayList<>(shapes);
+                Collections.sort(copy);
+                return copy.get(0).area();
+            });
+            measure("Ordering.sortByArea", size, i -> {
+                List<TwoDShape> copy = new ArrayList<>(shapes);
+                Ordering.sortByArea(copy);
+                return copy.get(0).area();
+            });
+            measure("Collections.sort(points)", size, i -> {
+                List<Point> copy = new ArrayList<>(points);
+                Collections.sort(copy);
+                return copy.get(0).x();
+            });
+            measure("printAllAndReturnLeast", size, i -> Ordering.printAllAndReturnLeast(shapes, discard).area());
+        }
+    }
+
+    /**
+     * Warms up and then measures the specified body, printing the average time and allocation per operation. A body
+     * that works on a collection of <code>size</code> elements counts as a single operation.
+     */
+    private static void measure(String name, int size, Body body) {
+        // Large inputs are expensive per call, so keep the number of calls per round roughly constant in elements
+        int calls = Math.max(1, BATCH / size);
+        try {
+            for (int round = 0; round < WARMUP_ROUNDS; round++)
+                runBatch(body, calls);
+        } catch (IllegalArgumentException e) {
+            // Sorting with a comparator that is not a total order may be rejected by TimSort
+            System.out.printf("%-40s %10d %s%n", name, size, "failed: " + e.getMessage());
+            return;
+        }
+
+        long totalNanos = 0, totalBytes = 0;
+        for (int round = 0; round < MEASUREMENT_ROUNDS; round++) {
+            long bytesBefore = allocatedBytes();
+            long start = System.nanoTime();
+            runBatch(body, calls);
+            totalNanos += System.nanoTime() - start;
+            totalBytes += allocatedBytes() - bytesBefore;
+        }
+
+        long ops = (long) calls * MEASUREMENT_ROUNDS;
+        System.out.printf("%-40s %10d %14.1f %14d%n", name, size, (double) totalNanos / ops, totalBytes / ops);
+    }
+
+    private static void runBatch(Body body, int calls) {
+        double acc = 0;
+        for (int i = 0; i < calls; i++)
+            acc += body.run(i);
+        sink += acc;
+    }
+
+    /**
+     * @return the number of bytes allocated so far by the current thread, or zero if the JVM cannot report it
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        return 0;
+    }
+
+    private static List<TwoDPoint> randomTriangle(Random random) {
+        while (true) {
+            List<TwoDPoint> vertices = randomVertices(random, 3);
+            try {
+                new Triangle(vertices);
+                return vertices;
+            } catch (IllegalArgumentException ignored) {
+                // Degenerate draw, try again
+            }
+        }
+    }
+
+    private static List<TwoDPoint> randomQuadrilateral(Random random) {
+        while (true) {
+            List<TwoDPoint> vertices = randomVertices(random, 4);
+            try {
+                new Quadrilateral(vertices);
+                return vertices;
+            } catch (IllegalArgumentException ignored) {
+                // Degenerate draw, try again
+            }
+        }
+    }
+
+    private static List<TwoDPoint> randomVertices(Random random, int count) {
+        double[] coordinates = new double[2 * count];
+        for (int i = 0; i < coordinates.length; i++)
+            coordinates[i] = Math.round(random.nextDouble() * 100_000) / 100.0;
+        return TwoDPoint.ofDoubles(coordinates);
+    }
+
+    private static List<TwoDShape> randomShapes(Random random, int size) {
+        List<TwoDShape> shapes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            switch (i % 3) {
+                case 0:
+                    shapes.add(new Circle(random.nextDouble() * 1000, random.nextDouble() * 1000,
+                                          1 + random.nextDouble() * 10));
+                    break;
+                case 1:
+                    shapes.add(new Triangle(randomTriangle(random)));
+                    break;
+                default:
+                    shapes.add(new Quadrilateral(randomQuadrilateral(random)));
+            }
+        }
+        return shapes;
+    }
+
+    private static List<Point> randomPoints(Random random, int size) {
+        List<Point> points = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            if (i % 4 == 0)
+                points.add(new ThreeDPoint(random.nextDouble() * 1000, random.nextDouble() * 1000,
+                                           random.nextDouble() * 1000));
+            else
+                points.add(new TwoDPoint(random.nextDouble() * 1000, random.nextDouble() * 1000));
+        }
+        return points;
+    }
+}
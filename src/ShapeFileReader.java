@@ -0,0 +1,495 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Streams shapes out of a shape file by memory-mapping it and parsing coordinates straight from the mapped bytes,
+ * without building intermediate <code>String</code>s. Two formats are supported:
+ * <ul>
+ *     <li>{@link Format#CSV}: one shape per line, a kind followed by its coordinates, e.g. <code>C,x,y,r</code>,
+ *     <code>T,x1,y1,x2,y2,x3,y3</code> or <code>Q,x1,y1,...,x4,y4</code>. The kind may also be spelled out as
+ *     <code>circle</code>, <code>triangle</code> or <code>quadrilateral</code>, in any case. Blank lines and lines
+ *     starting with <code>#</code> are ignored.</li>
+ *     <li>{@link Format#BINARY}: a sequence of records, each a one-byte kind (0 for a circle, 3 for a triangle, 4 for a
+ *     quadrilateral) followed by its coordinates as little-endian doubles.</li>
+ * </ul>
+ *
+ * Every record is validated by constructing the shape, which runs its <code>isMember</code> check. A record that cannot
+ * be parsed or is not a valid shape is reported through {@link #badRecords()} and skipped, and the load carries on.
+ * CSV files can be split at line boundaries, so {@link #stream(boolean)} with <code>parallel</code> set parses
+ * different parts of the file on different threads. Binary records have no separators to resynchronize on, so binary
+ * files are read sequentially.
+ *
+ * Files larger than 2 GB are mapped one window at a time.
+ */
+public class ShapeFileReader implements Closeable {
+
+    public enum Format { CSV, BINARY }
+
+    /**
+     * A record that was skipped, identified by its byte offset in the file.
+     */
+    public static final class BadRecord {
+        private final long   offset;
+        private final String reason;
+
+        BadRecord(long offset, String reason) {
+            this.offset = offset;
+            this.reason = reason;
+        }
+
+        public long offset() { return offset; }
+
+        public String reason() { return reason; }
+
+        @Override
+        public String toString() {
+            return "BadRecord[offset: " + offset + "; reason: " + reason + "]";
+        }
+    }
+
+    /** Size of each mapped window of the file. */
+    private static final long WINDOW_SIZE     = 64L << 20;
+    /** Longest record accepted; a longer line is reported as bad. */
+    private static final int  MAX_RECORD_SIZE = 4096;
+    /** Spliterators over fewer bytes than this are not split any further. */
+    private static final long MIN_SPLIT_SIZE  = 1L << 20;
+
+    private final FileChannel channel;
+    private final Format      format;
+    private final long        size;
+
+    private final ConcurrentLinkedQueue<BadRecord> badRecords     = new ConcurrentLinkedQueue<>();
+    private final LongAdder                        badRecordCount = new LongAdder();
+
+    private ShapeFileReader(FileChannel channel, Format format) throws IOException {
+        this.channel = channel;
+        this.format = format;
+        this.size = channel.size();
+    }
+
+    /**
+     * Opens a shape file for reading.
+     *
+     * @param path   the file to read
+     * @param format the format of the file
+     * @return a reader over the file, which must be closed after use
+     * @throws IOException if the file cannot be opened
+     */
+    public static ShapeFileReader open(Path path, Format format) throws IOException {
+        return new ShapeFileReader(FileChannel.open(path, StandardOpenOption.READ), format);
+    }
+
+    /**
+     * @return an iterator over the valid shapes in the file, in file order
+     */
+    public Iterator<TwoDShape> iterator() {
+        return Spliterators.iterator(spliterator());
+    }
+
+    /**
+     * @return a spliterator over the valid shapes in the file, which can split CSV files at line boundaries
+     */
+    public Spliterator<TwoDShape> spliterator() {
+        return new RecordSpliterator(0, size);
+    }
+
+    /**
+     * @param parallel whether the returned stream is parallel
+     * @return a stream of the valid shapes in the file
+     */
+    public Stream<TwoDShape> stream(boolean parallel) {
+        return StreamSupport.stream(spliterator(), parallel);
+    }
+
+    /**
+     * @return the records skipped so far because they were malformed or not valid shapes
+     */
+    public List<BadRecord> badRecords() {
+        List<BadRecord> list = new ArrayList<>(badRecords);
+        list.sort((a, b) -> Long.compare(a.offset, b.offset));
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * @return the number of records skipped so far
+     */
+    public long badRecordCount() {
+        return badRecordCount.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void reportBadRecord(long offset, String reason) {
+        badRecords.add(new BadRecord(offset, reason));
+        badRecordCount.increment();
+    }
+
+    /**
+     * Builds and validates a shape of the specified kind from its coordinates.
+     *
+     * @return the shape, or <code>null</code> if the coordinates do not form a valid shape of that kind
+     */
+    static TwoDShape toShape(byte kind, double[] c) {
+        try {
+            switch (kind) {
+                case ShapeStore.CIRCLE:
+                    Circle circle = new Circle(c[0], c[1], c[2]);
+                    return circle.isMember(circle.getPosition()) ? circle : null;
+                case ShapeStore.TRIANGLE:
+                    return new Triangle(TwoDPoint.ofDoubles(c[0], c[1], c[2], c[3], c[4], c[5]));
+                case ShapeStore.QUADRILATERAL:
+                    return new Quadrilateral(TwoDPoint.ofDoubles(c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7]));
+                default:
+                    return null;
+            }
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the number of coordinates a shape of the specified kind is made of, or -1 for an unknown kind
+     */
+    static int coordinateCount(byte kind) {
+        switch (kind) {
+            case ShapeStore.CIRCLE:        return 3;
+            case ShapeStore.TRIANGLE:      return 6;
+            case ShapeStore.QUADRILATERAL: return 8;
+            default:            return -1;
+        }
+    }
+
+    /**
+     * Walks the records that start in <code>[position, end)</code>, mapping the file one window at a time.
+     */
+    private final class RecordSpliterator implements Spliterator<TwoDShape> {
+        private long position;
+        private long end;
+
+        private MappedByteBuffer window;
+        private long             windowStart, windowEnd;
+
+        private final double[] coordinates = new double[8];
+
+        RecordSpliterator(long position, long end) {
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super TwoDShape> action) {
+            while (position < end) {
+                TwoDShape shape = format == Format.CSV ? nextCsvRecord() : nextBinaryRecord();
+                if (shape != null) {
+                    action.accept(shape);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator<TwoDShape> trySplit() {
+            if (format != Format.CSV || end - position < 2 * MIN_SPLIT_SIZE)
+                return null;
+
+            // Split just after the first line break past the midpoint, so both halves start on a record boundary
+            long mid = position + (end - position) / 2;
+            ensureMapped(mid);
+            long split = -1;
+            for (long p = mid; p < Math.min(end, mid + MAX_RECORD_SIZE) && p < windowEnd; p++) {
+                if (byteAt(p) == '\n') {
+                    split = p + 1;
+                    break;
+                }
+            }
+            if (split < 0 || split >= end)
+                return null;
+
+            RecordSpliterator prefix = new RecordSpliterator(position, split);
+            position = split;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            // Roughly one shape per 48 bytes of text or binary
+            return Math.max(1, (end - position) / 48);
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | IMMUTABLE;
+        }
+
+        /**
+         * Parses the line starting at {@link #position} and moves past it.
+         *
+         * @return the shape on the line, or <code>null</code> if the line was skipped
+         */
+        private TwoDShape nextCsvRecord() {
+            long start = position;
+            ensureMapped(start);
+            long limit = Math.min(windowEnd, start + MAX_RECORD_SIZE);
+            long lineEnd = start;
+            while (lineEnd < limit && byteAt(lineEnd) != '\n')
+                lineEnd++;
+
+            if (lineEnd == limit && lineEnd < size) {
+                // No line break within the record size limit; skip ahead to the next one
+                reportBadRecord(start, "record longer than " + MAX_RECORD_SIZE + " bytes");
+                position = skipLine(lineEnd);
+                return null;
+            }
+            position = lineEnd + 1;
+
+            long p = skipBlanks(start, lineEnd);
+            if (p == lineEnd || byteAt(p) == '#')
+                return null;
+
+            // Kind
+            long tokenEnd = p;
+            while (tokenEnd < lineEnd && byteAt(tokenEnd) != ',')
+                tokenEnd++;
+            byte kind = parseKind(p, trimEnd(p, tokenEnd));
+            if (kind < 0) {
+                reportBadRecord(start, "unknown shape kind");
+                return null;
+            }
+
+            // Coordinates
+            int count = coordinateCount(kind);
+            p = tokenEnd;
+            for (int i = 0; i < count; i++) {
+                if (p >= lineEnd) {
+                    reportBadRecord(start, "expected " + count + " coordinates, found " + i);
+                    return null;
+                }
+                long fieldStart = skipBlanks(p + 1, lineEnd);
+                long fieldEnd = fieldStart;
+                while (fieldEnd < lineEnd && byteAt(fieldEnd) != ',')
+                    fieldEnd++;
+                double value = parseDouble(fieldStart, trimEnd(fieldStart, fieldEnd));
+                if (Double.isNaN(value)) {
+                    reportBadRecord(start, "malformed coordinate " + (i + 1));
+                    return null;
+                }
+                coordinates[i] = value;
+                p = fieldEnd;
+            }
+            if (p < lineEnd) {
+                reportBadRecord(start, "expected " + count + " coordinates, found more");
+                return null;
+            }
+
+            TwoDShape shape = toShape(kind, coordinates);
+            if (shape == null)
+                reportBadRecord(start, "not a valid shape");
+            return shape;
+        }
+
+        /**
+         * Parses the binary record starting at {@link #position} and moves past it.
+         *
+         * @return the shape in the record, or <code>null</code> if the record was skipped
+         */
+        private TwoDShape nextBinaryRecord() {
+            long start = position;
+            ensureMapped(start);
+            byte kind = byteAt(start);
+            int count = coordinateCount(kind);
+            if (count < 0) {
+                // Without separators there is no way to find the next record, so the rest of the file is lost
+                reportBadRecord(start, "unknown shape kind " + kind + "; skipping the rest of the file");
+                position = end;
+                return null;
+            }
+            if (start + 1 + 8L * count > size) {
+                reportBadRecord(start, "truncated record");
+                position = end;
+                return null;
+            }
+
+            for (int i = 0; i < count; i++)
+                coordinates[i] = window.getDouble((int) (start + 1 + 8L * i - windowStart));
+            position = start + 1 + 8L * count;
+
+            TwoDShape shape = toShape(kind, coordinates);
+            if (shape == null)
+                reportBadRecord(start, "not a valid shape");
+            return shape;
+        }
+
+        /**
+         * Makes sure the current window covers the record starting at <code>offset</code>, remapping if needed.
+         */
+        private void ensureMapped(long offset) {
+            boolean covered = offset + MAX_RECORD_SIZE <= windowEnd || windowEnd == size;
+            if (window != null && offset >= windowStart && covered)
+                return;
+            try {
+                windowStart = offset;
+                windowEnd = Math.min(size, offset + WINDOW_SIZE);
+                window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+                window.order(ByteOrder.LITTLE_ENDIAN);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private byte byteAt(long offset) {
+            return window.get((int) (offset - windowStart));
+        }
+
+        private long skipLine(long offset) {
+            for (long p = offset; p < size; p++) {
+                ensureMapped(p);
+                if (byteAt(p) == '\n')
+                    return p + 1;
+            }
+            return size;
+        }
+
+        private long skipBlanks(long from, long to) {
+            while (from < to && isBlank(byteAt(from)))
+                from++;
+            return from;
+        }
+
+        private long trimEnd(long from, long to) {
+            while (to > from && isBlank(byteAt(to - 1)))
+                to--;
+            return to;
+        }
+
+        private boolean isBlank(byte b) {
+            return b == ' ' || b == '\t' || b == '\r';
+        }
+
+        private byte parseKind(long from, long to) {
+            if (matches(from, to, "c") || matches(from, to, "circle"))
+                return ShapeStore.CIRCLE;
+            if (matches(from, to, "t") || matches(from, to, "triangle"))
+                return ShapeStore.TRIANGLE;
+            if (matches(from, to, "q") || matches(from, to, "quadrilateral"))
+                return ShapeStore.QUADRILATERAL;
+            return -1;
+        }
+
+        private boolean matches(long from, long to, String word) {
+            if (to - from != word.length())
+                return false;
+            for (int i = 0; i < word.length(); i++) {
+                if (Character.toLowerCase((char) byteAt(from + i)) != word.charAt(i))
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Parses a decimal number such as <code>-12.5</code> or <code>3e-2</code>. Numbers with at most 15 significant
+         * digits and a small decimal exponent are converted exactly with one multiplication or division by a power of
+         * ten; anything else falls back to {@link Double#parseDouble}.
+         *
+         * @return the number, or <code>NaN</code> if the field is not a number
+         */
+        private double parseDouble(long from, long to) {
+            long p = from;
+            boolean negative = false;
+            if (p < to && (byteAt(p) == '-' || byteAt(p) == '+'))
+                negative = byteAt(p++) == '-';
+
+            long mantissa = 0;
+            int digits = 0, exponent = 0;
+            boolean sawDigit = false;
+            for (; p < to && byteAt(p) >= '0' && byteAt(p) <= '9'; p++) {
+                sawDigit = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (byteAt(p) - '0');
+                    if (mantissa != 0) digits++;
+                } else {
+                    exponent++;
+                }
+            }
+            if (p < to && byteAt(p) == '.') {
+                for (p++; p < to && byteAt(p) >= '0' && byteAt(p) <= '9'; p++) {
+                    sawDigit = true;
+                    if (digits < 18) {
+                        mantissa = mantissa * 10 + (byteAt(p) - '0');
+                        if (mantissa != 0) digits++;
+                        exponent--;
+                    }
+                }
+            }
+            if (!sawDigit)
+                return Double.NaN;
+            if (p < to && (byteAt(p) == 'e' || byteAt(p) == 'E'))
+                return slowParse(from, to);
+            if (p != to)
+                return Double.NaN;
+
+            double value;
+            if (digits <= 15 && exponent >= -22 && exponent <= 22) {
+                value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+            } else {
+                return slowParse(from, to);
+            }
+            return negative ? -value : value;
+        }
+
+        private double slowParse(long from, long to) {
+            byte[] bytes = new byte[(int) (to - from)];
+            for (int i = 0; i < bytes.length; i++)
+                bytes[i] = byteAt(from + i);
+            try {
+                double value = Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII));
+                return Double.isNaN(value) ? Double.NaN : value;
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Convenience for callers that only need the shapes: reads every valid shape of a file into a list.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    public static List<TwoDShape> readAll(Path path, Format format) throws IOException {
+        try (ShapeFileReader reader = open(path, format)) {
+            List<TwoDShape> shapes = new ArrayList<>();
+            Iterator<TwoDShape> it = reader.iterator();
+            while (it.hasNext())
+                shapes.add(it.next());
+            return shapes;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,347 @@
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Process-wide instrumentation of the shape classes' hot paths, off by default. While enabled, it keeps
+ * <ul>
+ *     <li>per-shape-type counters of <code>area()</code>, <code>perimeter()</code> and <code>setPosition</code> calls
+ *     and of <code>isMember</code> rejections;</li>
+ *     <li>hit and miss counters of the memoized <code>area()</code>, <code>perimeter()</code> and
+ *     <code>boundingBox()</code> values of circles, triangles, quadrilaterals and polygons. A hit is a call answered
+ *     from the cache, and a miss one that had to compute the value because the shape was new or had moved;</li>
+ *     <li>latency histograms of the bulk sorts {@link Ordering#sortByXLocation} and {@link Ordering#sortByArea}. Only
+ *     these two are timed: a list sorted directly with <code>List.sort</code> or <code>Collections.sort</code>, by
+ *     {@link Ordering.XLocationShapeComparator} or in natural order, runs entirely in the JDK and is not recorded;</li>
+ *     <li>the JFR events <code>shapes.SetPosition</code>, timing each validation and canonical reordering, and
+ *     <code>shapes.IsMemberRejection</code>, recording each rejected set of vertices. These are only emitted while a
+ *     flight recording with the events enabled is running.</li>
+ * </ul>
+ * Everything is read through {@link #snapshot()}. When disabled, each instrumented call costs one volatile read.
+ *
+ * Instrumentation is switched on with {@link #setEnabled(boolean)} or by starting the JVM with
+ * <code>-DshapeMetrics.enabled=true</code>.
+ */
+public final class ShapeMetrics {
+
+    // Shape types, indexing the per-type counters
+    static final int CIRCLE        = 0;
+    static final int TRIANGLE      = 1;
+    static final int QUADRILATERAL = 2;
+    static final int POLYGON       = 3;
+
+    private static final String[] SHAPE_NAMES = {"Circle", "Triangle", "Quadrilateral", "Polygon"};
+
+    private static volatile boolean enabled = Boolean.getBoolean("shapeMetrics.enabled");
+
+    private static final LongAdder[] AREA_CALLS         = adders();
+    private static final LongAdder[] PERIMETER_CALLS    = adders();
+    private static final LongAdder[] SET_POSITION_CALLS = adders();
+    private static final LongAdder[] REJECTIONS         = adders();
+
+    private static final LongAdder CACHE_HITS   = new LongAdder();
+    private static final LongAdder CACHE_MISSES = new LongAdder();
+
+    static final Histogram SORT_BY_X_LOCATION = new Histogram();
+    static final Histogram SORT_BY_AREA       = new Histogram();
+
+    /** Returned by {@link #sortStarted()} when disabled, so that the matching call records nothing. */
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+
+    private ShapeMetrics() {
+    }
+
+    /**
+     * @return whether instrumentation is currently collecting
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Switches instrumentation on or off. Values collected so far are kept either way.
+     */
+    public static void setEnabled(boolean enabled) {
+        ShapeMetrics.enabled = enabled;
+    }
+
+    /**
+     * Resets every counter and histogram to zero.
+     */
+    public static void reset() {
+        for (int i = 0; i < SHAPE_NAMES.length; i++) {
+            AREA_CALLS[i].reset();
+            PERIMETER_CALLS[i].reset();
+            SET_POSITION_CALLS[i].reset();
+            REJECTIONS[i].reset();
+        }
+        CACHE_HITS.reset();
+        CACHE_MISSES.reset();
+        SORT_BY_X_LOCATION.reset();
+        SORT_BY_AREA.reset();
+    }
+
+    /**
+     * Copies every metric. The values are read one at a time while collection goes on, so metrics updated during the
+     * call may be slightly out of step with each other.
+     *
+     * @return the copy, which does not change afterwards
+     */
+    public static Snapshot snapshot() {
+        Map<String, Long> counters = new TreeMap<>();
+        for (int i = 0; i < SHAPE_NAMES.length; i++) {
+            counters.put("area.calls." + SHAPE_NAMES[i], AREA_CALLS[i].sum());
+            counters.put("perimeter.calls." + SHAPE_NAMES[i], PERIMETER_CALLS[i].sum());
+            counters.put("setPosition.calls." + SHAPE_NAMES[i], SET_POSITION_CALLS[i].sum());
+            counters.put("isMember.rejections." + SHAPE_NAMES[i], REJECTIONS[i].sum());
+        }
+        counters.put("metricCache.hits", CACHE_HITS.sum());
+        counters.put("metricCache.misses", CACHE_MISSES.sum());
+        Map<String, HistogramSnapshot> histograms = new TreeMap<>();
+        histograms.put("sort.byXLocation", SORT_BY_X_LOCATION.snapshot());
+        histograms.put("sort.byArea", SORT_BY_AREA.snapshot());
+        return new Snapshot(counters, histograms);
+    }
+
+    static void areaCalled(int shape) {
+        if (enabled)
+            AREA_CALLS[shape].increment();
+    }
+
+    static void perimeterCalled(int shape) {
+        if (enabled)
+            PERIMETER_CALLS[shape].increment();
+    }
+
+    static void cacheHit() {
+        if (enabled)
+            CACHE_HITS.increment();
+    }
+
+    static void cacheMiss() {
+        if (enabled)
+            CACHE_MISSES.increment();
+    }
+
+    /**
+     * Counts a <code>setPosition</code> call and, if a recording wants it, starts timing it.
+     *
+     * @return the event to pass to {@link #setPositionFinished}, or <code>null</code> if there is nothing to record
+     */
+    static SetPositionEvent setPositionStarted(int shape, int vertices) {
+        if (!enabled)
+            return null;
+        SET_POSITION_CALLS[shape].increment();
+        SetPositionEvent event = new SetPositionEvent();
+        if (!event.isEnabled())
+            return null;
+        event.shape = SHAPE_NAMES[shape];
+        event.vertices = vertices;
+        event.begin();
+        return event;
+    }
+
+    static void setPositionFinished(SetPositionEvent event) {
+        if (event != null)
+            event.commit();
+    }
+
+    /**
+     * Records that <code>isMember</code> rejected the specified vertices.
+     */
+    static void rejected(int shape, List<? extends Point> vertices) {
+        if (!enabled)
+            return;
+        REJECTIONS[shape].increment();
+        IsMemberRejectionEvent event = new IsMemberRejectionEvent();
+        if (event.shouldCommit()) {
+            event.shape = SHAPE_NAMES[shape];
+            event.vertices = vertices.toString();
+            event.commit();
+        }
+    }
+
+    /**
+     * @return the start time to pass to {@link Histogram#recordSince}
+     */
+    static long sortStarted() {
+        return enabled ? System.nanoTime() : NOT_TIMED;
+    }
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[SHAPE_NAMES.length];
+        for (int i = 0; i < adders.length; i++)
+            adders[i] = new LongAdder();
+        return adders;
+    }
+
+    @Name("shapes.SetPosition")
+    @Label("Shape setPosition")
+    @Description("Validation and canonical reordering of a shape's vertices")
+    @Category("Shapes")
+    @StackTrace(false)
+    static final class SetPositionEvent extends Event {
+        @Label("Shape")
+        String shape;
+
+        @Label("Vertices")
+        int vertices;
+    }
+
+    @Name("shapes.IsMemberRejection")
+    @Label("Shape isMember rejection")
+    @Description("A set of vertices rejected as an invalid shape")
+    @Category("Shapes")
+    static final class IsMemberRejectionEvent extends Event {
+        @Label("Shape")
+        String shape;
+
+        @Label("Vertices")
+        String vertices;
+    }
+
+    /**
+     * A lock-free latency histogram with one bucket per power of two nanoseconds: bucket <code>i</code> counts
+     * latencies of at least <code>2^(i-1)</code> and less than <code>2^i</code> nanoseconds.
+     */
+    static final class Histogram {
+        private final LongAdder[] buckets = new LongAdder[64];
+        private final LongAdder   count   = new LongAdder();
+        private final LongAdder   total   = new LongAdder();
+
+        Histogram() {
+            for (int i = 0; i < buckets.length; i++)
+                buckets[i] = new LongAdder();
+        }
+
+        /**
+         * Records the time elapsed since <code>start</code>, as returned by {@link ShapeMetrics#sortStarted()}.
+         */
+        void recordSince(long start) {
+            if (start == NOT_TIMED)
+                return;
+            long nanos = Math.max(0, System.nanoTime() - start);
+            buckets[64 - Long.numberOfLeadingZeros(nanos)].increment();
+            count.increment();
+            total.add(nanos);
+        }
+
+        void reset() {
+            for (LongAdder bucket : buckets)
+                bucket.reset();
+            count.reset();
+            total.reset();
+        }
+
+        HistogramSnapshot snapshot() {
+            long[] counts = new long[buckets.length];
+            for (int i = 0; i < counts.length; i++)
+                counts[i] = buckets[i].sum();
+            return new HistogramSnapshot(count.sum(), total.sum(), counts);
+        }
+    }
+
+    /**
+     * A copy of a latency histogram.
+     */
+    public static final class HistogramSnapshot {
+        private final long   count, totalNanos;
+        private final long[] buckets;
+
+        HistogramSnapshot(long count, long totalNanos, long[] buckets) {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.buckets = buckets;
+        }
+
+        /** @return the number of latencies recorded */
+        public long count() { return count; }
+
+        /** @return the sum of the latencies recorded, in nanoseconds */
+        public long totalNanos() { return totalNanos; }
+
+        /** @return the mean latency in nanoseconds, or <code>0</code> if nothing was recorded */
+        public double meanNanos() { return count == 0 ? 0.0 : (double) totalNanos / count; }
+
+        /**
+         * @param quantile a fraction between 0 and 1, such as <code>0.99</code>
+         * @return an upper bound, within a factor of two, on the latency at the quantile in nanoseconds, or
+         * <code>0</code> if nothing was recorded
+         */
+        public long quantileNanos(double quantile) {
+            if (quantile < 0 || quantile > 1)
+                throw new IllegalArgumentException();
+            long total = 0;
+            for (long bucket : buckets)
+                total += bucket;
+            long rank = (long) Math.ceil(quantile * total), seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen > 0 && seen >= rank)
+                    return i == 63 ? Long.MAX_VALUE : 1L << i;
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * An immutable copy of every metric at one point in time.
+     */
+    public static final class Snapshot {
+        private final Map<String, Long>              counters;
+        private final Map<String, HistogramSnapshot> histograms;
+
+        Snapshot(Map<String, Long> counters, Map<String, HistogramSnapshot> histograms) {
+            this.counters = Collections.unmodifiableMap(counters);
+            this.histograms = Collections.unmodifiableMap(histograms);
+        }
+
+        /**
+         * @return the counters by name, such as <code>area.calls.Triangle</code>,
+         * <code>isMember.rejections.Quadrilateral</code> or <code>metricCache.hits</code>, in name order
+         */
+        public Map<String, Long> counters() { return counters; }
+
+        /**
+         * @return the latency histograms by name, <code>sort.byXLocation</code> and <code>sort.byArea</code>
+         */
+        public Map<String, HistogramSnapshot> histograms() { return histograms; }
+
+        /**
+         * @return the value of the named counter, or <code>0</code> if there is no such counter
+         */
+        public long counter(String name) {
+            Long value = counters.get(name);
+            return value == null ? 0 : value;
+        }
+
+        /**
+         * @return every metric as a line of the form <code>name value</code>, with histograms reported as their
+         * count, total, p50 and p99 in nanoseconds
+         */
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            for (Map.Entry<String, Long> counter : counters.entrySet())
+                builder.append(counter.getKey()).append(' ').append(counter.getValue()).append('\n');
+            for (Map.Entry<String, HistogramSnapshot> entry : histograms.entrySet()) {
+                String name = entry.getKey();
+                HistogramSnapshot histogram = entry.getValue();
+                builder.append(name).append(".count ").append(histogram.count()).append('\n');
+                builder.append(name).append(".totalNanos ").append(histogram.totalNanos()).append('\n');
+                builder.append(name).append(".p50Nanos ").append(histogram.quantileNanos(0.5)).append('\n');
+                builder.append(name).append(".p99Nanos ").append(histogram.quantileNanos(0.99)).append('\n');
+            }
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,405 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * An R-tree over two-dimensional shapes, keyed on their axis-aligned bounding envelopes. A tree can be bulk-loaded
+ * from an existing collection with Sort-Tile-Recursive packing, and then answers rectangle-window and k-nearest-shape
+ * queries in roughly logarithmic time instead of by a linear scan over {@link TwoDShape#getPosition()}.
+ *
+ * Shapes are tracked by identity. Since {@link TwoDShape#setPosition(List)} and <code>snap()</code> move a shape in
+ * place without the tree knowing, callers must call {@link #update(TwoDShape)} after moving a shape that is in the
+ * tree; until then the shape is found under its old envelope.
+ */
+public class ShapeRTree {
+
+    private static final int MAX_ENTRIES = 16;
+    private static final int MIN_ENTRIES = MAX_ENTRIES / 4;
+
+    /** An axis-aligned bounding rectangle. */
+    private abstract static class Box {
+        double minX, minY, maxX, maxY;
+
+        double centerX() { return (minX + maxX) / 2; }
+
+        double centerY() { return (minY + maxY) / 2; }
+
+        double area() { return (maxX - minX) * (maxY - minY); }
+
+        boolean intersects(double minX, double minY, double maxX, double maxY) {
+            return this.minX <= maxX && minX <= this.maxX && this.minY <= maxY && minY <= this.maxY;
+        }
+
+        boolean contains(Box o) {
+            return minX <= o.minX && minY <= o.minY && o.maxX <= maxX && o.maxY <= maxY;
+        }
+
+        /** @return the area of this box after being enlarged to also cover the specified box */
+        double enlargedArea(Box o) {
+            return (Math.max(maxX, o.maxX) - Math.min(minX, o.minX)) *
+                   (Math.max(maxY, o.maxY) - Math.min(minY, o.minY));
+        }
+
+        /** @return the squared distance from the specified point to the nearest point of this box */
+        double squaredDistance(double x, double y) {
+            double dx = x < minX ? minX - x : (x > maxX ? x - maxX : 0);
+            double dy = y < minY ? minY - y : (y > maxY ? y - maxY : 0);
+            return dx * dx + dy * dy;
+        }
+    }
+
+    private static final class Entry extends Box {
+        final TwoDShape shape;
+
+        Entry(TwoDShape shape) {
+            this.shape = shape;
+            double[] envelope = envelope(shape);
+            minX = envelope[0];
+            minY = envelope[1];
+            maxX = envelope[2];
+            maxY = envelope[3];
+        }
+    }
+
+    private static final class Node extends Box {
+        final boolean   leaf;
+        final List<Box> children = new ArrayList<>(MAX_ENTRIES + 1);
+
+        Node(boolean leaf) {
+            this.leaf = leaf;
+        }
+
+        void add(Box child) {
+            if (children.isEmpty()) {
+                minX = child.minX;
+                minY = child.minY;
+                maxX = child.maxX;
+                maxY = child.maxY;
+            } else {
+                minX = Math.min(minX, child.minX);
+                minY = Math.min(minY, child.minY);
+                maxX = Math.max(maxX, child.maxX);
+                maxY = Math.max(maxY, child.maxY);
+            }
+            children.add(child);
+        }
+
+        void recomputeBounds() {
+            List<Box> copy = new ArrayList<>(children);
+            children.clear();
+            for (Box child : copy)
+                add(child);
+        }
+    }
+
+    private static final class Candidate {
+        final Box    box;
+        final double distance;
+
+        Candidate(Box box, double distance) {
+            this.box = box;
+            this.distance = distance;
+        }
+    }
+
+    private Node                        root    = new Node(true);
+    private final Map<TwoDShape, Entry> entries = new IdentityHashMap<>();
+
+    public ShapeRTree() {
+    }
+
+    /**
+     * Builds a tree over the specified shapes using Sort-Tile-Recursive bulk loading, which packs the leaves almost
+     * full and keeps sibling envelopes from overlapping much.
+     *
+     * @param shapes the shapes to index
+     * @return a new tree holding every shape in the collection
+     */
+    public static ShapeRTree bulkLoad(Collection<? extends TwoDShape> shapes) {
+        ShapeRTree tree = new ShapeRTree();
+        List<Box> level = new ArrayList<>(shapes.size());
+        for (TwoDShape shape : shapes) {
+            if (tree.entries.containsKey(shape))
+                continue;
+            Entry entry = new Entry(shape);
+            tree.entries.put(shape, entry);
+            level.add(entry);
+        }
+        if (level.isEmpty())
+            return tree;
+
+        boolean leaf = true;
+        while (level.size() > 1 || leaf) {
+            level = packLevel(level, leaf);
+            leaf = false;
+        }
+        tree.root = (Node) level.get(0);
+        return tree;
+    }
+
+    /**
+     * Packs one level of boxes into parent nodes: sort by center x, cut into vertical slices, sort each slice by center
+     * y and fill nodes of {@link #MAX_ENTRIES} in that order.
+     */
+    private static List<Box> packLevel(List<Box> boxes, boolean leaf) {
+        int nodeCount = (boxes.size() + MAX_ENTRIES - 1) / MAX_ENTRIES;
+        int sliceCount = (int) Math.ceil(Math.sqrt(nodeCount));
+        int sliceSize = sliceCount * MAX_ENTRIES;
+
+        boxes.sort((a, b) -> Double.compare(a.centerX(), b.centerX()));
+        List<Box> parents = new ArrayList<>(nodeCount);
+        for (int from = 0; from < boxes.size(); from += sliceSize) {
+            List<Box> slice = boxes.subList(from, Math.min(from + sliceSize, boxes.size()));
+            slice.sort((a, b) -> Double.compare(a.centerY(), b.centerY()));
+            Node node = null;
+            for (Box box : slice) {
+                if (node == null || node.children.size() == MAX_ENTRIES) {
+                    node = new Node(leaf);
+                    parents.add(node);
+                }
+                node.add(box);
+            }
+        }
+        return parents;
+    }
+
+    /**
+     * @return the number of shapes in this tree
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return <code>true</code> if the specified shape instance is in this tree
+     */
+    public boolean contains(TwoDShape shape) {
+        return entries.containsKey(shape);
+    }
+
+    /**
+     * Adds the specified shape to this tree under its current envelope. Adding a shape that is already in the tree has
+     * the same effect as {@link #update(TwoDShape)}.
+     */
+    public void insert(TwoDShape shape) {
+        if (entries.containsKey(shape)) {
+            update(shape);
+            return;
+        }
+        Entry entry = new Entry(shape);
+        entries.put(shape, entry);
+        insert(entry, 0);
+    }
+
+    /**
+     * Removes the specified shape from this tree.
+     *
+     * @return <code>true</code> if the shape was in the tree
+     */
+    public boolean remove(TwoDShape shape) {
+        Entry entry = entries.remove(shape);
+        if (entry == null)
+            return false;
+
+        List<Entry> orphans = new ArrayList<>();
+        remove(root, entry, orphans);
+        if (!root.leaf && root.children.size() == 1)
+            root = (Node) root.children.get(0);
+        else if (root.children.isEmpty())
+            root = new Node(true);
+
+        for (Entry orphan : orphans)
+            insert(orphan, 0);
+        return true;
+    }
+
+    /**
+     * Re-indexes the specified shape under its current envelope. This must be called after a shape in the tree has been
+     * moved with {@link TwoDShape#setPosition(List)} or <code>snap()</code>.
+     *
+     * @return <code>true</code> if the shape was in the tree
+     */
+    public boolean update(TwoDShape shape) {
+        if (!remove(shape))
+            return false;
+        insert(shape);
+        return true;
+    }
+
+    /**
+     * Finds every shape whose envelope intersects the specified rectangle, boundary included.
+     *
+     * @return the shapes found, in no particular order
+     */
+    public List<TwoDShape> search(double minX, double minY, double maxX, double maxY) {
+        List<TwoDShape> found = new ArrayList<>();
+        if (!entries.isEmpty())
+            search(root, minX, minY, maxX, maxY, found);
+        return found;
+    }
+
+    /**
+     * Finds the <code>k</code> shapes whose envelopes are nearest to the specified point, by best-first traversal. A
+     * point inside an envelope is at distance zero from it.
+     *
+     * @return at most <code>k</code> shapes, in increasing order of envelope distance
+     */
+    public List<TwoDShape> nearest(double x, double y, int k) {
+        List<TwoDShape> found = new ArrayList<>(Math.max(0, Math.min(k, entries.size())));
+        if (k <= 0 || entries.isEmpty())
+            return found;
+
+        PriorityQueue<Candidate> queue = new PriorityQueue<>((a, b) -> Double.compare(a.distance, b.distance));
+        queue.add(new Candidate(root, root.squaredDistance(x, y)));
+        while (!queue.isEmpty() && found.size() < k) {
+            Box box = queue.poll().box;
+            if (box instanceof Entry) {
+                found.add(((Entry) box).shape);
+            } else {
+                for (Box child : ((Node) box).children)
+                    queue.add(new Candidate(child, child.squaredDistance(x, y)));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return the envelope of the specified shape as <code>{minX, minY, maxX, maxY}</code>
+     * @see TwoDShape#boundingBox()
+     */
+    static double[] envelope(TwoDShape shape) {
+        return shape.boundingBox();
+    }
+
+    /**
+     * Inserts a box at the specified height above the leaves (0 for an entry), splitting the root if it overflows.
+     */
+    private void insert(Box box, int height) {
+        Node sibling = insert(root, box, height, depth());
+        if (sibling != null) {
+            Node newRoot = new Node(false);
+            newRoot.add(root);
+            newRoot.add(sibling);
+            root = newRoot;
+        }
+    }
+
+    /**
+     * @return the split-off sibling of <code>node</code> if it overflowed, and <code>null</code> otherwise
+     */
+    private Node insert(Node node, Box box, int height, int nodeHeight) {
+        if (nodeHeight == height) {
+            node.add(box);
+        } else {
+            Node child = chooseSubtree(node, box);
+            Node split = insert(child, box, height, nodeHeight - 1);
+            node.recomputeBounds();
+            if (split != null)
+                node.add(split);
+        }
+        return node.children.size() > MAX_ENTRIES ? split(node) : null;
+    }
+
+    private int depth() {
+        int depth = 0;
+        for (Node node = root; !node.leaf; node = (Node) node.children.get(0))
+            depth++;
+        return depth;
+    }
+
+    /** Picks the child needing the least enlargement to cover the box, breaking ties by the smaller area. */
+    private static Node chooseSubtree(Node node, Box box) {
+        Node best = null;
+        double bestEnlargement = Double.POSITIVE_INFINITY, bestArea = Double.POSITIVE_INFINITY;
+        for (Box child : node.children) {
+            double area = child.area();
+            double enlargement = child.enlargedArea(box) - area;
+            if (enlargement < bestEnlargement || (enlargement == bestEnlargement && area < bestArea)) {
+                best = (Node) child;
+                bestEnlargement = enlargement;
+                bestArea = area;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Splits an overflowing node in half along the axis on which its children's centers are most spread out. The lower
+     * half stays in <code>node</code> and the upper half is returned as a new sibling.
+     */
+    private static Node split(Node node) {
+        double minCX = Double.POSITIVE_INFINITY, maxCX = Double.NEGATIVE_INFINITY;
+        double minCY = Double.POSITIVE_INFINITY, maxCY = Double.NEGATIVE_INFINITY;
+        for (Box child : node.children) {
+            minCX = Math.min(minCX, child.centerX());
+            maxCX = Math.max(maxCX, child.centerX());
+            minCY = Math.min(minCY, child.centerY());
+            maxCY = Math.max(maxCY, child.centerY());
+        }
+        if (maxCX - minCX >= maxCY - minCY)
+            node.children.sort((a, b) -> Double.compare(a.centerX(), b.centerX()));
+        else
+            node.children.sort((a, b) -> Double.compare(a.centerY(), b.centerY()));
+
+        List<Box> children = new ArrayList<>(node.children);
+        int half = children.size() / 2;
+        Node sibling = new Node(node.leaf);
+        node.children.clear();
+        for (int i = 0; i < half; i++)
+            node.add(children.get(i));
+        for (int i = half; i < children.size(); i++)
+            sibling.add(children.get(i));
+        return sibling;
+    }
+
+    /**
+     * Removes the entry from the subtree, dissolving any child left with fewer than {@link #MIN_ENTRIES} children and
+     * collecting the entries under it into <code>orphans</code> for reinsertion.
+     *
+     * @return <code>true</code> if the entry was found in the subtree
+     */
+    private static boolean remove(Node node, Entry entry, List<Entry> orphans) {
+        if (node.leaf) {
+            if (!node.children.remove(entry))
+                return false;
+            node.recomputeBounds();
+            return true;
+        }
+
+        for (int i = 0; i < node.children.size(); i++) {
+            Node child = (Node) node.children.get(i);
+            if (!child.contains(entry) || !remove(child, entry, orphans))
+                continue;
+            if (child.children.size() < MIN_ENTRIES) {
+                node.children.remove(i);
+                collectEntries(child, orphans);
+            }
+            node.recomputeBounds();
+            return true;
+        }
+        return false;
+    }
+
+    private static void collectEntries(Node node, List<Entry> out) {
+        for (Box child : node.children) {
+            if (node.leaf)
+                out.add((Entry) child);
+            else
+                collectEntries((Node) child, out);
+        }
+    }
+
+    private static void search(Node node, double minX, double minY, double maxX, double maxY, List<TwoDShape> found) {
+        for (Box child : node.children) {
+            if (!child.intersects(minX, minY, maxX, maxY))
+                continue;
+            if (node.leaf)
+                found.add(((Entry) child).shape);
+            else
+                search((Node) child, minX, minY, maxX, maxY, found);
+        }
+    }
+}
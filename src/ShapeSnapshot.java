@@ -0,0 +1,236 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A compact, versioned binary snapshot of a collection of circles, triangles and quadrilaterals, for saving shapes and
+ * reloading them without rebuilding them from source data. All values are little-endian. A snapshot file is laid out
+ * as follows:
+ * <pre>
+ *   header   magic "SHPS" (int), format version (int), shape count (long), offset of the index (long)
+ *   records  per shape: kind (byte: 0 circle, 3 triangle, 4 quadrilateral) followed by its coordinates (doubles),
+ *            i.e. x, y, r for a circle and the vertices in canonical order for the other shapes
+ *   index    the file offset of each record (long), in order
+ * </pre>
+ *
+ * Since the shapes written are already valid and canonical, the {@link Reader} rebuilds them on demand straight from
+ * the memory-mapped file without running <code>isMember</code> or the canonical ordering of <code>setPosition</code>
+ * again. A reader must therefore only be used on files produced by {@link #write}.
+ */
+public final class ShapeSnapshot {
+
+    static final int MAGIC   = 0x53504853;   // "SHPS" when read as little-endian bytes
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 24;
+    /** Largest record: a kind byte and eight doubles. */
+    private static final int MAX_RECORD_SIZE = 1 + 8 * 8;
+    /** Size of each mapped segment; consecutive segments overlap so that no record or index entry is split. */
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private ShapeSnapshot() {
+    }
+
+    /**
+     * Writes a snapshot of the specified shapes, replacing the file if it exists.
+     *
+     * @param path   the file to write
+     * @param shapes the shapes to save, each a {@link Circle}, {@link Triangle} or {@link Quadrilateral}
+     * @throws IOException              if the file cannot be written
+     * @throws IllegalArgumentException if a shape is of any other type
+     */
+    public static void write(Path path, Collection<? extends TwoDShape> shapes) throws IOException {
+        long[] offsets = new long[shapes.size()];
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            long position = HEADER_SIZE;
+            channel.position(position);
+
+            int count = 0;
+            for (TwoDShape shape : shapes) {
+                if (buffer.remaining() < MAX_RECORD_SIZE)
+                    flush(channel, buffer);
+                offsets[count++] = position;
+                position += putRecord(buffer, shape);
+            }
+
+            long indexOffset = position;
+            for (long offset : offsets) {
+                if (buffer.remaining() < Long.BYTES)
+                    flush(channel, buffer);
+                buffer.putLong(offset);
+            }
+            flush(channel, buffer);
+
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(count).putLong(indexOffset);
+            buffer.flip();
+            channel.write(buffer, 0);
+        }
+    }
+
+    /**
+     * Opens a snapshot file for reading.
+     *
+     * @throws IOException if the file cannot be read, or is not a snapshot of a supported version
+     */
+    public static Reader open(Path path) throws IOException {
+        return new Reader(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    private static int putRecord(ByteBuffer buffer, TwoDShape shape) {
+        byte kind;
+        try {
+            kind = ShapeStore.kindOf(shape);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Cannot snapshot " + shape.getClass().getName(), e);
+        }
+        double[] coordinates = ShapeStore.coordinates(shape, kind);
+        buffer.put(kind);
+        for (double value : coordinates)
+            buffer.putDouble(value);
+        if (kind == ShapeStore.CIRCLE) {
+            buffer.putDouble(((CircularShape) shape).getRadius());
+            return 1 + 3 * Double.BYTES;
+        }
+        return 1 + 2 * kind * Double.BYTES;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Read access to a snapshot file through memory-mapped segments. Shapes are rebuilt lazily: nothing is decoded
+     * until {@link #get(int)} is called, and every call builds a new shape instance.
+     */
+    public static final class Reader implements Closeable {
+        private final FileChannel        channel;
+        private final MappedByteBuffer[] segments;
+        private final int                count;
+        private final long               indexOffset;
+
+        private Reader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            try {
+                long size = channel.size();
+                if (size < HEADER_SIZE)
+                    throw new IOException("Not a shape snapshot: file too short");
+
+                int segmentCount = (int) Math.max(1, (size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+                segments = new MappedByteBuffer[segmentCount];
+                for (int i = 0; i < segmentCount; i++) {
+                    long start = i * SEGMENT_SIZE;
+                    long length = Math.min(size - start, SEGMENT_SIZE + MAX_RECORD_SIZE);
+                    segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                    segments[i].order(ByteOrder.LITTLE_ENDIAN);
+                }
+
+                ByteBuffer header = segments[0];
+                if (header.getInt(0) != MAGIC)
+                    throw new IOException("Not a shape snapshot: bad magic number");
+                if (header.getInt(4) != VERSION)
+                    throw new IOException("Unsupported shape snapshot version " + header.getInt(4));
+                long count = header.getLong(8);
+                indexOffset = header.getLong(16);
+                if (count < 0 || count > Integer.MAX_VALUE || indexOffset < HEADER_SIZE ||
+                        indexOffset + count * Long.BYTES != size)
+                    throw new IOException("Corrupt shape snapshot header");
+                this.count = (int) count;
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * @return the number of shapes in the snapshot
+         */
+        public int size() {
+            return count;
+        }
+
+        /**
+         * @return the kind of the shape at the specified index: 0 for a circle, 3 for a triangle, 4 for a quadrilateral
+         */
+        public byte kind(int index) {
+            return byteAt(recordOffset(index));
+        }
+
+        /**
+         * Rebuilds the shape at the specified index from the snapshot, without validating or reordering its vertices.
+         *
+         * @throws IndexOutOfBoundsException if the index is out of range
+         */
+        public TwoDShape get(int index) {
+            long offset = recordOffset(index);
+            ByteBuffer segment = segments[(int) (offset / SEGMENT_SIZE)];
+            int p = (int) (offset % SEGMENT_SIZE);
+            switch (segment.get(p)) {
+                case ShapeStore.CIRCLE:
+                    return new Circle(segment.getDouble(p + 1), segment.getDouble(p + 9), segment.getDouble(p + 17));
+                case ShapeStore.TRIANGLE:
+                    return Triangle.ofCanonical(segment.getDouble(p + 1), segment.getDouble(p + 9),
+                                                segment.getDouble(p + 17), segment.getDouble(p + 25),
+                                                segment.getDouble(p + 33), segment.getDouble(p + 41));
+                case ShapeStore.QUADRILATERAL:
+                    return Quadrilateral.ofCanonical(segment.getDouble(p + 1), segment.getDouble(p + 9),
+                                                     segment.getDouble(p + 17), segment.getDouble(p + 25),
+                                                     segment.getDouble(p + 33), segment.getDouble(p + 41),
+                                                     segment.getDouble(p + 49), segment.getDouble(p + 57));
+                default:
+                    throw new IllegalStateException("Corrupt shape snapshot record at offset " + offset);
+            }
+        }
+
+        /**
+         * @return a read-only list view of the snapshot, which rebuilds a shape on every {@link List#get(int)}
+         */
+        public List<TwoDShape> asList() {
+            return new LazyList();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private long recordOffset(int index) {
+            if (index < 0 || index >= count)
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+            long entry = indexOffset + (long) index * Long.BYTES;
+            return segments[(int) (entry / SEGMENT_SIZE)].getLong((int) (entry % SEGMENT_SIZE));
+        }
+
+        private byte byteAt(long offset) {
+            return segments[(int) (offset / SEGMENT_SIZE)].get((int) (offset % SEGMENT_SIZE));
+        }
+
+        private final class LazyList extends AbstractList<TwoDShape> implements RandomAccess {
+            @Override
+            public TwoDShape get(int index) {
+                return Reader.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        }
+    }
+}
@@ -0,0 +1,465 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A columnar (structure-of-arrays) store of two-dimensional shapes. Instead of keeping every shape as an object holding
+ * a list of {@link TwoDPoint} instances, each shape occupies one row across a fixed set of primitive
+ * <code>double[]</code> columns: a {@link CircularShape} uses the first vertex columns for its center together with the
+ * radius column, while a {@link Triangle} or {@link Quadrilateral} uses three or four vertex columns, stored in the
+ * same canonical order as their {@link TwoDShape#getPosition()}. Any other shape with three or four vertices that form
+ * a valid triangle or quadrilateral, such as a view of one, is stored as a triangle or quadrilateral.
+ *
+ * Bulk kernels such as {@link #area(int, int, double[])} run directly over these columns, and {@link #view(int)} hands
+ * out lightweight {@link TwoDShape} views over a single row for callers that expect the object API.
+ */
+public class ShapeStore {
+
+    static final byte CIRCLE        = 0;
+    static final byte TRIANGLE      = 3;
+    static final byte QUADRILATERAL = 4;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private byte[]   kinds;
+    private double[] x0, y0, x1, y1, x2, y2, x3, y3;
+    private double[] radius;
+    private int      size;
+
+    public ShapeStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ShapeStore(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException();
+        allocate(Math.max(initialCapacity, 1));
+    }
+
+    /**
+     * @return the number of shapes held in this store
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Appends a circle to this store.
+     *
+     * @return the index of the newly added circle
+     * @throws IllegalArgumentException if the radius is not positive
+     */
+    public int addCircle(double x, double y, double r) {
+        if (!(r > 0))
+            throw new IllegalArgumentException();
+        int i = nextRow();
+        kinds[i] = CIRCLE;
+        x0[i] = x;
+        y0[i] = y;
+        radius[i] = r;
+        return i;
+    }
+
+    /**
+     * Appends a copy of the specified shape to this store, with its vertices in canonical order.
+     *
+     * @param shape the shape to copy into this store
+     * @return the index of the newly added shape
+     * @throws IllegalArgumentException if the shape is not a circle, triangle or quadrilateral, as told by
+     *                                  {@link #kindOf(TwoDShape)}
+     */
+    public int add(TwoDShape shape) {
+        kindOf(shape);
+        int i = nextRow();
+        write(i, shape);
+        return i;
+    }
+
+    /**
+     * Replaces the shape at the specified index with a copy of the specified shape.
+     *
+     * @throws IndexOutOfBoundsException if the index is out of range
+     * @throws IllegalArgumentException  if the shape is not a circle, triangle or quadrilateral, as told by
+     *                                   {@link #kindOf(TwoDShape)}
+     */
+    public void set(int index, TwoDShape shape) {
+        checkIndex(index);
+        write(index, shape);
+    }
+
+    /**
+     * @return the number of sides of the shape at the specified index, as given by {@link TwoDShape#numSides()}
+     */
+    public int numSides(int index) {
+        checkIndex(index);
+        return kinds[index] == CIRCLE ? (int) Double.POSITIVE_INFINITY : kinds[index];
+    }
+
+    /**
+     * @return the area of the shape at the specified index
+     */
+    public double area(int index) {
+        checkIndex(index);
+        return areaOf(index);
+    }
+
+    /**
+     * @return the perimeter of the shape at the specified index
+     */
+    public double perimeter(int index) {
+        checkIndex(index);
+        return perimeterOf(index);
+    }
+
+    /**
+     * Computes the areas of the shapes in the index range <code>[from, to)</code>.
+     *
+     * @param from the first index, inclusive
+     * @param to   the last index, exclusive
+     * @param out  the destination array, filled starting at position 0
+     * @throws IndexOutOfBoundsException if the range is invalid or <code>out</code> is too short
+     */
+    public void area(int from, int to, double[] out) {
+        checkRange(from, to, out.length);
+        for (int i = from; i < to; i++)
+            out[i - from] = areaOf(i);
+    }
+
+    /**
+     * Computes the perimeters of the shapes in the index range <code>[from, to)</code>.
+     *
+     * @param from the first index, inclusive
+     * @param to   the last index, exclusive
+     * @param out  the destination array, filled starting at position 0
+     * @throws IndexOutOfBoundsException if the range is invalid or <code>out</code> is too short
+     */
+    public void perimeter(int from, int to, double[] out) {
+        checkRange(from, to, out.length);
+        for (int i = from; i < to; i++)
+            out[i - from] = perimeterOf(i);
+    }
+
+    /**
+     * @return the total area of the shapes in the index range <code>[from, to)</code>
+     */
+    public double totalArea(int from, int to) {
+        checkRange(from, to, to - from);
+        double total = 0.0;
+        for (int i = from; i < to; i++)
+            total += areaOf(i);
+        return total;
+    }
+
+    /**
+     * Returns the least x-value of the shape at the specified index, i.e., the x-value of its first canonical vertex
+     * or, for a circle, the x-value of its center minus its radius.
+     */
+    public double xLocation(int index) {
+        checkIndex(index);
+        return kinds[index] == CIRCLE ? x0[index] - radius[index] : x0[index];
+    }
+
+    /**
+     * Orders the shapes in the index range <code>[from, to)</code> the same way as
+     * {@link Ordering.XLocationShapeComparator}: in increasing order of their least x-value, with ties broken so that
+     * the shape whose leftmost point is higher comes first. Unlike the comparator, the keys are compared exactly, so
+     * the ordering is a consistent total order. The sort is stable.
+     *
+     * @param from the first index, inclusive
+     * @param to   the last index, exclusive
+     * @return the store indices of the shapes in the range, in sorted order
+     */
+    public int[] orderByXLocation(int from, int to) {
+        checkRange(from, to, to - from);
+        int n = to - from;
+        int[] order = new int[n];
+        double[] keys = new double[n];
+        for (int i = 0; i < n; i++) {
+            int row = from + i;
+            order[i] = row;
+            keys[i] = kinds[row] == CIRCLE ? x0[row] - radius[row] : x0[row];
+        }
+        mergeSort(order.clone(), order, keys.clone(), keys, 0, n);
+        return order;
+    }
+
+    /**
+     * Returns a lightweight view of the shape at the specified index. The view reads its values straight from the
+     * columns of this store, and {@link TwoDShape#setPosition(List)} on the view writes the new position back. The view
+     * of a circle is a {@link CircularShape}, so it is handled as a circle wherever a real one would be; if the shape at
+     * the index is later replaced by one of another kind, a new view must be taken.
+     *
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public TwoDShape view(int index) {
+        checkIndex(index);
+        return kinds[index] == CIRCLE ? new CircleView(index) : new View(index);
+    }
+
+    /**
+     * @return a new, independent {@link Circle}, {@link Triangle} or {@link Quadrilateral} equal to the shape at the
+     * specified index
+     */
+    public TwoDShape get(int index) {
+        checkIndex(index);
+        switch (kinds[index]) {
+            case CIRCLE:
+                return new Circle(x0[index], y0[index], radius[index]);
+            case TRIANGLE:
+                return new Triangle(TwoDPoint.ofDoubles(x0[index], y0[index], x1[index], y1[index],
+                                                        x2[index], y2[index]));
+            default:
+                return new Quadrilateral(TwoDPoint.ofDoubles(x0[index], y0[index], x1[index], y1[index],
+                                                             x2[index], y2[index], x3[index], y3[index]));
+        }
+    }
+
+    private double areaOf(int i) {
+        switch (kinds[i]) {
+            case CIRCLE:
+                return Circle.area(radius[i]);
+            case TRIANGLE:
+                return Triangle.area(x0[i], y0[i], x1[i], y1[i], x2[i], y2[i]);
+            default:
+                return Quadrilateral.area(x0[i], y0[i], x1[i], y1[i], x2[i], y2[i], x3[i], y3[i]);
+        }
+    }
+
+    private double perimeterOf(int i) {
+        switch (kinds[i]) {
+            case CIRCLE:
+                return Circle.perimeter(radius[i]);
+            case TRIANGLE:
+                return Triangle.perimeter(x0[i], y0[i], x1[i], y1[i], x2[i], y2[i]);
+            default:
+                return Quadrilateral.perimeter(x0[i], y0[i], x1[i], y1[i], x2[i], y2[i], x3[i], y3[i]);
+        }
+    }
+
+    private void write(int i, TwoDShape shape) {
+        byte kind = kindOf(shape);
+        double[] c = coordinates(shape, kind);
+        kinds[i] = kind;
+        x0[i] = c[0];
+        y0[i] = c[1];
+        if (kind == CIRCLE) {
+            radius[i] = ((CircularShape) shape).getRadius();
+            return;
+        }
+        x1[i] = c[2];
+        y1[i] = c[3];
+        x2[i] = c[4];
+        y2[i] = c[5];
+        if (kind == QUADRILATERAL) {
+            x3[i] = c[6];
+            y3[i] = c[7];
+        }
+    }
+
+    /**
+     * Tells which kind of record holds a copy of the specified shape: a {@link CircularShape} is a circle, and a
+     * {@link Triangle}, {@link Quadrilateral} or any other shape with three or four vertices that form a valid triangle
+     * or quadrilateral, such as a view of one, is a triangle or quadrilateral.
+     *
+     * @return {@link #CIRCLE}, {@link #TRIANGLE} or {@link #QUADRILATERAL}
+     * @throws IllegalArgumentException if the shape is none of these
+     */
+    static byte kindOf(TwoDShape shape) {
+        if (shape instanceof CircularShape)
+            return CIRCLE;
+        if (shape instanceof Triangle)
+            return TRIANGLE;
+        if (shape instanceof Quadrilateral)
+            return QUADRILATERAL;
+        List<? extends Point> p = shape.getPosition();
+        if (p.size() == 3 && shape.numSides() == 3 &&
+                Triangle.isMember(p.get(0).x(), p.get(0).y(), p.get(1).x(), p.get(1).y(), p.get(2).x(), p.get(2).y()))
+            return TRIANGLE;
+        if (p.size() == 4 && shape.numSides() == 4 &&
+                Quadrilateral.isMember(p.get(0).x(), p.get(0).y(), p.get(1).x(), p.get(1).y(), p.get(2).x(),
+                                       p.get(2).y(), p.get(3).x(), p.get(3).y()))
+            return QUADRILATERAL;
+        throw new IllegalArgumentException("Not a circle, triangle or quadrilateral: " + shape);
+    }
+
+    /**
+     * @return the center of a circle, or the vertices of a triangle or quadrilateral in canonical order, of a shape of
+     * the specified kind as <code>{x0, y0, x1, y1, ...}</code>
+     */
+    static double[] coordinates(TwoDShape shape, byte kind) {
+        List<? extends Point> p = shape.getPosition();
+        int n = kind == CIRCLE ? 1 : kind;
+        double[] c = new double[2 * n];
+        for (int k = 0; k < n; k++) {
+            c[2 * k] = p.get(k).x();
+            c[2 * k + 1] = p.get(k).y();
+        }
+        // Triangles and quadrilaterals keep their vertices in canonical order already
+        if (kind != CIRCLE && !(shape instanceof Triangle) && !(shape instanceof Quadrilateral))
+            Polygon.canonicalize(c, n);
+        return c;
+    }
+
+    private int nextRow() {
+        if (size == kinds.length)
+            grow();
+        return size++;
+    }
+
+    private void allocate(int capacity) {
+        kinds = new byte[capacity];
+        x0 = new double[capacity];
+        y0 = new double[capacity];
+        x1 = new double[capacity];
+        y1 = new double[capacity];
+        x2 = new double[capacity];
+        y2 = new double[capacity];
+        x3 = new double[capacity];
+        y3 = new double[capacity];
+        radius = new double[capacity];
+    }
+
+    private void grow() {
+        int capacity = kinds.length + (kinds.length >> 1) + 1;
+        kinds = Arrays.copyOf(kinds, capacity);
+        x0 = Arrays.copyOf(x0, capacity);
+        y0 = Arrays.copyOf(y0, capacity);
+        x1 = Arrays.copyOf(x1, capacity);
+        y1 = Arrays.copyOf(y1, capacity);
+        x2 = Arrays.copyOf(x2, capacity);
+        y2 = Arrays.copyOf(y2, capacity);
+        x3 = Arrays.copyOf(x3, capacity);
+        y3 = Arrays.copyOf(y3, capacity);
+        radius = Arrays.copyOf(radius, capacity);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+
+    private void checkRange(int from, int to, int outLength) {
+        if (from < 0 || to > size || from > to || outLength < to - from)
+            throw new IndexOutOfBoundsException("Range: [" + from + ", " + to + "), Size: " + size);
+    }
+
+    /**
+     * Top-down merge sort of <code>dst</code> (and its parallel key array) using <code>src</code> as scratch space.
+     * Both pairs of arrays must hold the same contents on entry.
+     */
+    private void mergeSort(int[] src, int[] dst, double[] srcKeys, double[] dstKeys, int lo, int hi) {
+        if (hi - lo < 2)
+            return;
+        int mid = (lo + hi) >>> 1;
+        mergeSort(dst, src, dstKeys, srcKeys, lo, mid);
+        mergeSort(dst, src, dstKeys, srcKeys, mid, hi);
+        for (int i = lo, p = lo, q = mid; i < hi; i++) {
+            if (q >= hi || (p < mid && compareRows(src[p], srcKeys[p], src[q], srcKeys[q]) <= 0)) {
+                dst[i] = src[p];
+                dstKeys[i] = srcKeys[p++];
+            } else {
+                dst[i] = src[q];
+                dstKeys[i] = srcKeys[q++];
+            }
+        }
+    }
+
+    private int compareRows(int r1, double key1, int r2, double key2) {
+        int byX = Double.compare(key1, key2);
+        return byX != 0 ? byX : Double.compare(y0[r2], y0[r1]);
+    }
+
+    /**
+     * A flyweight {@link TwoDShape} over a single row of the enclosing store.
+     */
+    private class View implements TwoDShape {
+        final int row;
+
+        View(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public void setPosition(List<? extends Point> points) {
+            // Validate and canonicalize through the real shape class, then write the result back to the columns
+            TwoDShape shape = get(row);
+            shape.setPosition(points);
+            write(row, shape);
+        }
+
+        @Override
+        public List<? extends Point> getPosition() {
+            final int count = kinds[row] == CIRCLE ? 1 : kinds[row];
+            return new AbstractList<TwoDPoint>() {
+                @Override
+                public TwoDPoint get(int i) {
+                    if (i < 0 || i >= count)
+                        throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + count);
+                    switch (i) {
+                        case 0:  return new TwoDPoint(x0[row], y0[row]);
+                        case 1:  return new TwoDPoint(x1[row], y1[row]);
+                        case 2:  return new TwoDPoint(x2[row], y2[row]);
+                        default: return new TwoDPoint(x3[row], y3[row]);
+                    }
+                }
+
+                @Override
+                public int size() {
+                    return count;
+                }
+            };
+        }
+
+        @Override
+        public int numSides() {
+            return ShapeStore.this.numSides(row);
+        }
+
+        @Override
+        public boolean isMember(List<? extends Point> vertices) {
+            return get(row).isMember(vertices);
+        }
+
+        @Override
+        public double area() {
+            return areaOf(row);
+        }
+
+        @Override
+        public double[] boundingBox() {
+            if (kinds[row] == CIRCLE)
+                return new double[]{x0[row] - radius[row], y0[row] - radius[row],
+                                    x0[row] + radius[row], y0[row] + radius[row]};
+            double minX = Math.min(Math.min(x0[row], x1[row]), x2[row]);
+            double minY = Math.min(Math.min(y0[row], y1[row]), y2[row]);
+            double maxX = Math.max(Math.max(x0[row], x1[row]), x2[row]);
+            double maxY = Math.max(Math.max(y0[row], y1[row]), y2[row]);
+            if (kinds[row] == QUADRILATERAL) {
+                minX = Math.min(minX, x3[row]);
+                minY = Math.min(minY, y3[row]);
+                maxX = Math.max(maxX, x3[row]);
+                maxY = Math.max(maxY, y3[row]);
+            }
+            return new double[]{minX, minY, maxX, maxY};
+        }
+
+        @Override
+        public String toString() {
+            return get(row).toString();
+        }
+    }
+
+    /**
+     * A view of a circle, which exposes its radius like a real {@link Circle}.
+     */
+    private final class CircleView extends View implements CircularShape {
+        CircleView(int row) {
+            super(row);
+        }
+
+        @Override
+        public double getRadius() {
+            return radius[row];
+        }
+    }
+}
@@ -0,0 +1,98 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable snapshot of the vertices of a {@link Triangle}, {@link Quadrilateral} or {@link Polygon}, in the
+ * canonical order of the shape's <code>getPosition()</code>, held as a flat coordinate array
+ * <code>{x0, y0, x1, y1, ...}</code>. The vertices are only turned into {@link TwoDPoint}s when {@link #points()} is
+ * first called, so moving a shape allocates nothing but the array and the snapshot itself.
+ *
+ * These shapes keep their current snapshot in an {@link java.util.concurrent.atomic.AtomicReference}: moving a shape
+ * builds a new snapshot and publishes it in one step, and nothing ever writes into a published snapshot's vertices. A
+ * thread that reads a snapshot, or the list returned by <code>getPosition()</code>, therefore sees one consistent
+ * position without locking or copying, however the shape is moved afterwards.
+ *
+ * The area, perimeter and bounding box of the shape in this position are memoized in the snapshot itself, so they
+ * can never be mixed up with another position's. They are filled in on first use; threads that race to fill one in
+ * compute the same value.
+ */
+public final class ShapeVertices {
+
+    private final double[] coordinates;
+
+    // Built on first use; threads that race to build it build equal lists
+    private volatile List<TwoDPoint> points;
+
+    // Memoized metrics of the shape in this position, filled in by the shape on first use
+    volatile double   area      = Double.NaN;
+    volatile double   perimeter = Double.NaN;
+    volatile double[] boundingBox;
+
+    /**
+     * @param coordinates the vertices in canonical order, which the snapshot takes over and must not be changed
+     */
+    ShapeVertices(double[] coordinates) {
+        this.coordinates = coordinates;
+    }
+
+    /**
+     * @return the number of vertices
+     */
+    public int size() {
+        return coordinates.length / 2;
+    }
+
+    /**
+     * @return the x-value of the vertex at the specified index
+     */
+    public double x(int index) {
+        return coordinates[2 * index];
+    }
+
+    /**
+     * @return the y-value of the vertex at the specified index
+     */
+    public double y(int index) {
+        return coordinates[2 * index + 1];
+    }
+
+    /**
+     * @return a copy of the vertices as <code>{x0, y0, x1, y1, ...}</code>
+     */
+    public double[] coordinates() {
+        return coordinates.clone();
+    }
+
+    /**
+     * @return the vertices as an unmodifiable list of points, built on the first call and shared by later ones
+     */
+    public List<TwoDPoint> points() {
+        List<TwoDPoint> points = this.points;
+        if (points == null) {
+            points = Collections.unmodifiableList(TwoDPoint.ofDoubles(coordinates));
+            this.points = points;
+        }
+        return points;
+    }
+
+    /**
+     * @return the extent of the vertices as <code>{minX, minY, maxX, maxY}</code>
+     */
+    double[] extent() {
+        double[] box = {coordinates[0], coordinates[1], coordinates[0], coordinates[1]};
+        for (int i = 2; i < coordinates.length; i += 2) {
+            box[0] = Math.min(box[0], coordinates[i]);
+            box[1] = Math.min(box[1], coordinates[i + 1]);
+            box[2] = Math.max(box[2], coordinates[i]);
+            box[3] = Math.max(box[3], coordinates[i + 1]);
+        }
+        return box;
+    }
+
+    /**
+     * @return the vertices without copying, for use by the shapes only
+     */
+    double[] array() {
+        return coordinates;
+    }
+}
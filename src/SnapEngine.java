@@ -0,0 +1,156 @@
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Snaps whole collections of shapes to integer coordinates in parallel. Each call splits the collection across a
+ * fork/join pool; every leaf task gathers the vertices of its shapes into one primitive buffer, rounds the whole buffer
+ * in a single pass, and then validates and applies each shape's snapped vertices. The per-shape semantics are those of
+ * {@link Triangle#snap()} and {@link Quadrilateral#snap()}: a shape that would become invalid is left unchanged.
+ *
+ * Only triangles and quadrilaterals can be snapped; any other shape in the collection is skipped. A shape is only ever
+ * moved from the position its snapped vertices were computed from, so shapes moved concurrently by other threads, or
+ * appearing twice in one collection, are never overwritten with a stale position.
+ */
+public class SnapEngine {
+
+    /** Number of shapes below which a task snaps its shapes itself instead of splitting further. */
+    private static final int THRESHOLD = 1024;
+
+    /**
+     * The outcome of a bulk snap.
+     */
+    public static final class Result {
+        private final int snapped, unchanged, skipped;
+
+        Result(int snapped, int unchanged, int skipped) {
+            this.snapped = snapped;
+            this.unchanged = unchanged;
+            this.skipped = skipped;
+        }
+
+        /**
+         * @return the number of shapes that were moved to their snapped position
+         */
+        public int snapped() { return snapped; }
+
+        /**
+         * @return the number of shapes left unchanged because snapping would have made them invalid
+         */
+        public int unchanged() { return unchanged; }
+
+        /**
+         * @return the number of shapes that were neither triangles nor quadrilaterals, and so were not snapped
+         */
+        public int skipped() { return skipped; }
+
+        Result plus(Result o) {
+            return new Result(snapped + o.snapped, unchanged + o.unchanged, skipped + o.skipped);
+        }
+
+        @Override
+        public String toString() {
+            return "SnapEngine.Result[snapped: " + snapped + "; unchanged: " + unchanged + "; skipped: " + skipped +
+                   "]";
+        }
+    }
+
+    private SnapEngine() {
+    }
+
+    /**
+     * Snaps every triangle and quadrilateral in the collection using the common fork/join pool.
+     *
+     * @param shapes the shapes to snap in place
+     * @return how many shapes were snapped, left unchanged, or skipped
+     */
+    public static Result snapAll(Collection<? extends TwoDShape> shapes) {
+        return snapAll(shapes, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Snaps every triangle and quadrilateral in the collection using the specified fork/join pool.
+     *
+     * @param shapes the shapes to snap in place
+     * @param pool   the pool to run the snapping tasks in
+     * @return how many shapes were snapped, left unchanged, or skipped
+     */
+    public static Result snapAll(Collection<? extends TwoDShape> shapes, ForkJoinPool pool) {
+        TwoDShape[] array = shapes.toArray(new TwoDShape[0]);
+        return pool.invoke(new SnapTask(array, 0, array.length));
+    }
+
+    private static final class SnapTask extends RecursiveTask<Result> {
+        private static final long serialVersionUID = 1L;
+
+        private final TwoDShape[] shapes;
+        private final int         from, to;
+
+        SnapTask(TwoDShape[] shapes, int from, int to) {
+            this.shapes = shapes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Result compute() {
+            if (to - from <= THRESHOLD)
+                return snapRange(shapes, from, to);
+
+            int mid = (from + to) >>> 1;
+            SnapTask left = new SnapTask(shapes, from, mid);
+            left.fork();
+            Result right = new SnapTask(shapes, mid, to).compute();
+            return left.join().plus(right);
+        }
+    }
+
+    /**
+     * Snaps the shapes in <code>[from, to)</code> on the calling thread.
+     */
+    static Result snapRange(TwoDShape[] shapes, int from, int to) {
+        // Gather the vertices of every snappable shape into one buffer, eight slots per shape
+        // Each shape is read once, as one snapshot, so its vertices always come from a single position
+        double[] buffer = new double[8 * (to - from)];
+        ShapeVertices[] read = new ShapeVertices[to - from];
+        int skipped = 0;
+        for (int i = from; i < to; i++) {
+            TwoDShape shape = shapes[i];
+            if (!(shape instanceof Triangle) && !(shape instanceof Quadrilateral)) {
+                skipped++;
+                continue;
+            }
+            ShapeVertices v = shape instanceof Triangle ? ((Triangle) shape).snapshot()
+                                                        : ((Quadrilateral) shape).snapshot();
+            read[i - from] = v;
+            int offset = 8 * (i - from);
+            for (int k = 0; k < shape.numSides(); k++) {
+                buffer[offset + 2 * k] = v.x(k);
+                buffer[offset + 2 * k + 1] = v.y(k);
+            }
+        }
+
+        // Round the whole buffer in one pass
+        for (int j = 0; j < buffer.length; j++)
+            buffer[j] = Math.round(buffer[j]);
+
+        // Validate and move each shape, leaving the invalid ones as they were; a shape moved by another thread since it
+        // was read is snapped again from its new position
+        int snapped = 0, unchanged = 0;
+        for (int i = from; i < to; i++) {
+            TwoDShape shape = shapes[i];
+            int offset = 8 * (i - from);
+            boolean moved;
+            if (shape instanceof Triangle)
+                moved = ((Triangle) shape).moveToSnapped(read[i - from], buffer, offset);
+            else if (shape instanceof Quadrilateral)
+                moved = ((Quadrilateral) shape).moveToSnapped(read[i - from], buffer, offset);
+            else
+                continue;
+
+            if (moved) snapped++;
+            else unchanged++;
+        }
+        return new Result(snapped, unchanged, skipped);
+    }
+}
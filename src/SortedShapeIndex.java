@@ -0,0 +1,438 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A collection of two-dimensional shapes kept sorted in two orders at once: the natural order, by increasing area, and
+ * the order of {@link Ordering.XLocationShapeComparator}. Adding, removing or re-keying a shape takes O(log n), so
+ * shapes can be added and moved without ever re-sorting the whole collection, and both orders answer rank queries
+ * (the position of a shape, or the shape at a position) and range queries in O(log n) plus the size of the result.
+ *
+ * Each order is an order-statistic treap: a randomized balanced search tree whose nodes know the size of their
+ * subtree. The keys are primitives extracted from a shape when it is added or re-keyed, so no comparison ever calls
+ * <code>area()</code> or <code>getPosition()</code>. Shapes with equal keys keep the order in which they were added,
+ * so each order matches a stable sort of the shapes in insertion order.
+ *
+ * Shapes are tracked by identity. Any number of threads may query the index at once; updates take an exclusive lock.
+ * A shape moved directly with {@link TwoDShape#setPosition(List)} or <code>snap()</code> stays under its old keys until
+ * {@link #update(TwoDShape)} is called, whereas {@link #move} and {@link #snap} move the shape and re-key it in one
+ * step.
+ */
+public class SortedShapeIndex {
+
+    /** The two orders kept by the index. */
+    public enum Order {
+        /** By increasing area, the natural order of {@link TwoDShape}. */
+        AREA,
+        /** By increasing least x-value, as {@link Ordering.XLocationShapeComparator}. */
+        X_LOCATION
+    }
+
+    /** A shape and its extracted keys. */
+    private static final class Entry {
+        final TwoDShape shape;
+        final long      sequence;       // insertion order, breaking ties
+        double          area, x, y;
+
+        Entry(TwoDShape shape, long sequence) {
+            this.shape = shape;
+            this.sequence = sequence;
+            rekey();
+        }
+
+        void rekey() {
+            Point first = shape.getPosition().get(0);
+            area = shape.area();
+            x = Ordering.xLocation(shape, first);
+            y = first.y();
+        }
+    }
+
+    private static final class Node {
+        final Entry entry;
+        final int   priority = ThreadLocalRandom.current().nextInt();
+        Node        left, right;
+        int         size = 1;
+
+        Node(Entry entry) {
+            this.entry = entry;
+        }
+    }
+
+    private final Map<TwoDShape, Entry> entries = new IdentityHashMap<>();
+    private final ReadWriteLock         lock    = new ReentrantReadWriteLock();
+
+    private Node byArea, byXLocation;
+    private long nextSequence;
+
+    public SortedShapeIndex() {
+    }
+
+    public SortedShapeIndex(Collection<? extends TwoDShape> shapes) {
+        for (TwoDShape shape : shapes)
+            insert(shape);
+    }
+
+    /**
+     * @return the number of shapes in this index
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the specified shape instance is in this index
+     */
+    public boolean contains(TwoDShape shape) {
+        lock.readLock().lock();
+        try {
+            return entries.containsKey(shape);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the specified shape under its current area and x-location. Adding a shape that is already in the index has
+     * the same effect as {@link #update(TwoDShape)}.
+     */
+    public void insert(TwoDShape shape) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = entries.get(shape);
+            if (entry != null) {
+                rekey(entry);
+                return;
+            }
+            entry = new Entry(shape, nextSequence++);
+            entries.put(shape, entry);
+            byArea = insert(byArea, new Node(entry), Order.AREA);
+            byXLocation = insert(byXLocation, new Node(entry), Order.X_LOCATION);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the specified shape from this index.
+     *
+     * @return <code>true</code> if the shape was in the index
+     */
+    public boolean remove(TwoDShape shape) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = entries.remove(shape);
+            if (entry == null)
+                return false;
+            byArea = remove(byArea, entry, Order.AREA);
+            byXLocation = remove(byXLocation, entry, Order.X_LOCATION);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Re-keys the specified shape under its current area and x-location. This must be called after a shape in the
+     * index has been moved with {@link TwoDShape#setPosition(List)} or <code>snap()</code>.
+     *
+     * @return <code>true</code> if the shape was in the index
+     */
+    public boolean update(TwoDShape shape) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = entries.get(shape);
+            if (entry == null)
+                return false;
+            rekey(entry);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves a shape with {@link TwoDShape#setPosition(List)} and re-keys it, so that no reader sees it under stale keys.
+     *
+     * @throws IllegalArgumentException if the shape rejects the points, in which case it is left where it was
+     */
+    public void move(TwoDShape shape, List<? extends Point> points) {
+        lock.writeLock().lock();
+        try {
+            shape.setPosition(points);
+            Entry entry = entries.get(shape);
+            if (entry != null)
+                rekey(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Snaps a {@link Triangle} or {@link Quadrilateral} to integer coordinates and re-keys it. Any other shape is left
+     * as it is.
+     */
+    public void snap(TwoDShape shape) {
+        lock.writeLock().lock();
+        try {
+            if (shape instanceof Triangle)
+                ((Triangle) shape).snap();
+            else if (shape instanceof Quadrilateral)
+                ((Quadrilateral) shape).snap();
+            else
+                return;
+            Entry entry = entries.get(shape);
+            if (entry != null)
+                rekey(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of shapes before the specified shape in the specified order, or <code>-1</code> if the shape
+     * is not in this index
+     */
+    public int rank(Order order, TwoDShape shape) {
+        lock.readLock().lock();
+        try {
+            Entry entry = entries.get(shape);
+            if (entry == null)
+                return -1;
+            int rank = 0;
+            Node node = root(order);
+            while (node != null) {
+                int c = compare(entry, node.entry, order);
+                if (c == 0)
+                    return rank + size(node.left);
+                if (c < 0) {
+                    node = node.left;
+                } else {
+                    rank += size(node.left) + 1;
+                    node = node.right;
+                }
+            }
+            throw new IllegalStateException("Index is inconsistent");
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the shape at the specified position in the specified order
+     * @throws IndexOutOfBoundsException if the rank is out of range
+     */
+    public TwoDShape get(Order order, int rank) {
+        lock.readLock().lock();
+        try {
+            if (rank < 0 || rank >= entries.size())
+                throw new IndexOutOfBoundsException("Index: " + rank + ", Size: " + entries.size());
+            Node node = root(order);
+            while (true) {
+                int leftSize = size(node.left);
+                if (rank == leftSize)
+                    return node.entry.shape;
+                if (rank < leftSize) {
+                    node = node.left;
+                } else {
+                    rank -= leftSize + 1;
+                    node = node.right;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the shapes at positions <code>[fromRank, toRank)</code> in the specified order
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    public List<TwoDShape> range(Order order, int fromRank, int toRank) {
+        lock.readLock().lock();
+        try {
+            if (fromRank < 0 || toRank > entries.size() || fromRank > toRank)
+                throw new IndexOutOfBoundsException("From: " + fromRank + ", To: " + toRank + ", Size: " +
+                                                    entries.size());
+            List<TwoDShape> found = new ArrayList<>(toRank - fromRank);
+            collectRanks(root(order), fromRank, toRank, 0, found);
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the shapes whose area is between <code>min</code> and <code>max</code>, inclusive, by increasing area
+     */
+    public List<TwoDShape> areaRange(double min, double max) {
+        return valueRange(Order.AREA, min, max);
+    }
+
+    /**
+     * @return the shapes whose least x-value is between <code>minX</code> and <code>maxX</code>, inclusive, in
+     * x-location order
+     */
+    public List<TwoDShape> xLocationRange(double minX, double maxX) {
+        return valueRange(Order.X_LOCATION, minX, maxX);
+    }
+
+    /**
+     * @return a copy of every shape in the specified order
+     */
+    public List<TwoDShape> toList(Order order) {
+        lock.readLock().lock();
+        try {
+            List<TwoDShape> found = new ArrayList<>(entries.size());
+            collectRanks(root(order), 0, entries.size(), 0, found);
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<TwoDShape> valueRange(Order order, double min, double max) {
+        lock.readLock().lock();
+        try {
+            List<TwoDShape> found = new ArrayList<>();
+            collectValues(root(order), order, min, max, found);
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Node root(Order order) {
+        return order == Order.AREA ? byArea : byXLocation;
+    }
+
+    private void rekey(Entry entry) {
+        byArea = remove(byArea, entry, Order.AREA);
+        byXLocation = remove(byXLocation, entry, Order.X_LOCATION);
+        entry.rekey();
+        byArea = insert(byArea, new Node(entry), Order.AREA);
+        byXLocation = insert(byXLocation, new Node(entry), Order.X_LOCATION);
+    }
+
+    /**
+     * Compares two entries in the specified order, breaking ties by insertion order so that no two entries are equal.
+     */
+    private static int compare(Entry a, Entry b, Order order) {
+        int c = order == Order.AREA ? Double.compare(a.area, b.area) : Ordering.compareXLocation(a.x, a.y, b.x, b.y);
+        return c != 0 ? c : Long.compare(a.sequence, b.sequence);
+    }
+
+    private static double value(Entry entry, Order order) {
+        return order == Order.AREA ? entry.area : entry.x;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static Node update(Node node) {
+        node.size = size(node.left) + size(node.right) + 1;
+        return node;
+    }
+
+    private static Node insert(Node root, Node node, Order order) {
+        if (root == null)
+            return node;
+        if (node.priority > root.priority) {
+            // The new node becomes the root of this subtree
+            split(root, node.entry, order, node);
+            return update(node);
+        }
+        if (compare(node.entry, root.entry, order) < 0)
+            root.left = insert(root.left, node, order);
+        else
+            root.right = insert(root.right, node, order);
+        return update(root);
+    }
+
+    /**
+     * Splits a subtree around an entry that is not in it, making the lesser part the left child of <code>into</code>
+     * and the greater part its right child.
+     */
+    private static void split(Node root, Entry entry, Order order, Node into) {
+        if (root == null) {
+            into.left = null;
+            into.right = null;
+            return;
+        }
+        if (compare(root.entry, entry, order) < 0) {
+            split(root.right, entry, order, into);
+            root.right = into.left;
+            into.left = update(root);
+        } else {
+            split(root.left, entry, order, into);
+            root.left = into.right;
+            into.right = update(root);
+        }
+    }
+
+    private static Node remove(Node root, Entry entry, Order order) {
+        if (root == null)
+            throw new IllegalStateException("Index is inconsistent");
+        int c = compare(entry, root.entry, order);
+        if (c == 0)
+            return merge(root.left, root.right);
+        if (c < 0)
+            root.left = remove(root.left, entry, order);
+        else
+            root.right = remove(root.right, entry, order);
+        return update(root);
+    }
+
+    /**
+     * Joins two subtrees, every entry of the first of which precedes every entry of the second.
+     */
+    private static Node merge(Node a, Node b) {
+        if (a == null)
+            return b;
+        if (b == null)
+            return a;
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            return update(a);
+        }
+        b.left = merge(a, b.left);
+        return update(b);
+    }
+
+    /**
+     * Adds the shapes of the subtree at positions <code>[from, to)</code>, where the subtree starts at position
+     * <code>offset</code>, in order.
+     */
+    private static void collectRanks(Node node, int from, int to, int offset, List<TwoDShape> found) {
+        if (node == null || offset >= to || offset + node.size <= from)
+            return;
+        collectRanks(node.left, from, to, offset, found);
+        int position = offset + size(node.left);
+        if (from <= position && position < to)
+            found.add(node.entry.shape);
+        collectRanks(node.right, from, to, position + 1, found);
+    }
+
+    private static void collectValues(Node node, Order order, double min, double max, List<TwoDShape> found) {
+        if (node == null)
+            return;
+        double value = value(node.entry, order);
+        if (value >= min)
+            collectValues(node.left, order, min, max, found);
+        if (min <= value && value <= max)
+            found.add(node.entry.shape);
+        if (value <= max)
+            collectValues(node.right, order, min, max, found);
+    }
+}
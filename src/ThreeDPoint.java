@@ -3,7 +3,7 @@
  * <code>x</code>, <code>y</code>, and <code>z</code> values).
  */
 public class ThreeDPoint implements Point {
-    private double x, y, z;
+    private final double x, y, z;
 
     public ThreeDPoint(double x, double y, double z) {
         this.x = x;
@@ -19,9 +19,28 @@ public class ThreeDPoint implements Point {
         return new double[]{x, y, z};
     }
 
+    @Override
+    public double coordinate(int index) {
+        switch (index) {
+            case 0: return x;
+            case 1: return y;
+            case 2: return z;
+            default: throw new IndexOutOfBoundsException("Index " + index + " out of bounds for a three-dimensional point");
+        }
+    }
+
+    @Override
+    public double x() { return x; }
+
+    @Override
+    public double y() { return y; }
+
+    @Override
+    public double z() { return z; }
+
     @Override
     public double distanceFromOrigin() {
-        return Math.sqrt(Math.pow(x, 2) + Math.pow(y, 2) + Math.pow(z, 2));
+        return Math.sqrt(x * x + y * y + z * z);
     }
 
     @Override
@@ -34,7 +53,12 @@ public class ThreeDPoint implements Point {
         if (o == this) return true;
         if (!(o instanceof ThreeDPoint)) return false;
         ThreeDPoint point = (ThreeDPoint) o;
-        return point.coordinates()[0] == this.coordinates()[0] && point.coordinates()[1] == this.coordinates()[1] &&
-                point.coordinates()[2] == this.coordinates()[2];
+        return point.x == this.x && point.y == this.y && point.z == this.z;
+    }
+
+    @Override
+    public int hashCode() {
+        // Adding zero turns -0.0 into 0.0, which equals treats as the same coordinate
+        return 31 * (31 * Double.hashCode(x + 0.0) + Double.hashCode(y + 0.0)) + Double.hashCode(z + 0.0);
     }
 }
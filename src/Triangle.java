@@ -1,14 +1,30 @@
+import java.util.Arrays;
 import java.util.List;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Triangle implements TwoDShape {
 
-    List<TwoDPoint> vertices;
+    // The current position, replaced as a whole whenever this triangle moves
+    private final AtomicReference<ShapeVertices> vertices = new AtomicReference<>();
 
     public Triangle(List<TwoDPoint> vertices) {
-        this.vertices = vertices;
-        setPosition(this.vertices);
+        setPosition(vertices);
+    }
+
+    /**
+     * Wraps vertices that are already known to be valid and in canonical order, skipping both the validation and the
+     * reordering done by {@link #setPosition(List)}.
+     */
+    private Triangle(ShapeVertices canonicalVertices) {
+        this.vertices.set(canonicalVertices);
+    }
+
+    /**
+     * Creates a triangle from three vertices that are already valid and in the canonical order of
+     * {@link #getPosition()}, e.g. vertices read back from a snapshot of an existing triangle. No checks are made.
+     */
+    static Triangle ofCanonical(double x1, double y1, double x2, double y2, double x3, double y3) {
+        return new Triangle(new ShapeVertices(new double[]{x1, y1, x2, y2, x3, y3}));
     }
 
     /**
@@ -20,60 +36,18 @@ public class Triangle implements TwoDShape {
      */
     @Override
     public void setPosition(List<? extends Point> points) {
+        ShapeMetrics.SetPositionEvent event = ShapeMetrics.setPositionStarted(ShapeMetrics.TRIANGLE, points.size());
         if (points.size() < 3 || !(points.get(0) instanceof TwoDPoint) || !(points.get(1) instanceof TwoDPoint) ||
                 !(points.get(2) instanceof TwoDPoint) || !isMember(points))
             throw new IllegalArgumentException();
 
-        double x1 = points.get(0).coordinates()[0];
-        double y1 = points.get(0).coordinates()[1];
-        double x2 = points.get(1).coordinates()[0];
-        double y2 = points.get(1).coordinates()[1];
-        double x3 = points.get(2).coordinates()[0];
-        double y3 = points.get(2).coordinates()[1];
-
-        List<TwoDPoint> vertices = new ArrayList<>(3);
-        List<Point> copyOfPoints = new ArrayList<>(points);
-
-        // Find 1st pair, located as far to the bottom left as possible
-        double leastXCoord = Math.min(Math.min(x1, x2), x3);
-        List<Double> ycoordsPairedWithLeastXCoord = new ArrayList<>(3);
-        if (x1 == leastXCoord) ycoordsPairedWithLeastXCoord.add(y1);
-        if (x2 == leastXCoord) ycoordsPairedWithLeastXCoord.add(y2);
-        if (x3 == leastXCoord) ycoordsPairedWithLeastXCoord.add(y3);
-        vertices.add(new TwoDPoint(leastXCoord, Collections.min(ycoordsPairedWithLeastXCoord)));
-        // Remove the relevant point from the input list for easier calculations later on
-        if (x1 == leastXCoord && y1 == Collections.min(ycoordsPairedWithLeastXCoord)) copyOfPoints.remove(0);
-        else if (x2 == leastXCoord && y2 == Collections.min(ycoordsPairedWithLeastXCoord)) copyOfPoints.remove(1);
-        else if (x3 == leastXCoord && y3 == Collections.min(ycoordsPairedWithLeastXCoord)) copyOfPoints.remove(2);
-
-        // Sort by largest to smallest slope with respect to point A for remaining points
-        x1 = leastXCoord;
-        y1 = Collections.min(ycoordsPairedWithLeastXCoord);
-        x2 = copyOfPoints.get(0).coordinates()[0];
-        y2 = copyOfPoints.get(0).coordinates()[1];
-        x3 = copyOfPoints.get(1).coordinates()[0];
-        y3 = copyOfPoints.get(1).coordinates()[1];
-        double m2 = (y2 - y1) / (x2 - x1);
-        double m3 = (y3 - y1) / (x3 - x1);
-        List<Double> slopes = new ArrayList<>(2);
-        slopes.add(m2);
-        slopes.add(m3);
-        slopes.sort(Collections.reverseOrder());
-
-        // 2nd point - since I have run isMember I can be sure only one slope is infinite (vertical line)
-        if (Double.isNaN(slopes.get(0))) {
-            if (Double.isNaN(m2)) vertices.add(new TwoDPoint(x2, y2));
-            else if (Double.isNaN(m3)) vertices.add(new TwoDPoint(x3, y3));
-        } else {
-            if (slopes.get(0) == m2) vertices.add(new TwoDPoint(x2, y2));
-            else if (slopes.get(0) == m3) vertices.add(new TwoDPoint(x3, y3));
-        }
+        double[] coordinates = {points.get(0).x(), points.get(0).y(), points.get(1).x(), points.get(1).y(),
+                                points.get(2).x(), points.get(2).y()};
+        // Bottom-left vertex first, then the other two clockwise around it
+        Polygon.canonicalize(coordinates, 3);
 
-        // 3rd point
-        if (slopes.get(1) == m2) vertices.add(new TwoDPoint(x2, y2));
-        else if (slopes.get(1) == m3) vertices.add(new TwoDPoint(x3, y3));
-
-        this.vertices = vertices;
+        vertices.set(new ShapeVertices(coordinates));
+        ShapeMetrics.setPositionFinished(event);
     }
 
     /**
@@ -81,11 +55,18 @@ public class Triangle implements TwoDShape {
      * list in a clockwise manner on the two-dimensional x-y plane, starting with the point with the least x-value. If
      * two points have the same least x-value, then the clockwise direction starts with the point with the lower y-value.
      *
-     * @return the retrieved list of points.
+     * @return the retrieved list of points, which is unmodifiable and is not affected when this shape moves.
      */
     @Override
     public List<? extends Point> getPosition() {
-        return vertices;
+        return vertices.get().points();
+    }
+
+    /**
+     * @return the current position of this triangle as an immutable snapshot, which later moves do not affect
+     */
+    public ShapeVertices snapshot() {
+        return vertices.get();
     }
 
     /**
@@ -106,28 +87,21 @@ public class Triangle implements TwoDShape {
      */
     @Override
     public boolean isMember(List<? extends Point> vertices) {
-        double x1 = vertices.get(0).coordinates()[0];
-        double y1 = vertices.get(0).coordinates()[1];
-        double x2 = vertices.get(1).coordinates()[0];
-        double y2 = vertices.get(1).coordinates()[1];
-        double x3 = vertices.get(2).coordinates()[0];
-        double y3 = vertices.get(2).coordinates()[1];
-
-        // Case where at least 2 of the triangle's points are at the same spot
-        if (vertices.get(0).equals(vertices.get(1)) || vertices.get(0).equals(vertices.get(2)) || vertices.get(1).equals(vertices.get(2)))
-            return false;
-
-        // Case of a vertical line (infinite slope)
-        if (x1 == 0 && x2 == 0 && x3 == 0) return false;
-
-        // Get two of the points to form a line, and check to see if the remaining one does as well
-        // Get two of the points to form a line, and check to see if the remaining one does as well
-        // y = mx + b
-        double m = (y2 - y1) / (x2 - x1);
-        double b = y1 - m * x1;
-        if (y3 == m * x3 + b) return false;
+        boolean member = isMember(vertices.get(0).x(), vertices.get(0).y(), vertices.get(1).x(), vertices.get(1).y(),
+                                  vertices.get(2).x(), vertices.get(2).y());
+        if (!member)
+            ShapeMetrics.rejected(ShapeMetrics.TRIANGLE, vertices);
+        return member;
+    }
 
-        return true;
+    /**
+     * Applies the rules of {@link #isMember(List)} to three vertices given by their coordinates.
+     *
+     * @return <code>true</code> if (x1, y1), (x2, y2) and (x3, y3) form a valid triangle
+     */
+    static boolean isMember(double x1, double y1, double x2, double y2, double x3, double y3) {
+        // Coincident points, or three points in a straight line, leave the orientation with no sign
+        return Orientation.sign(x1, y1, x2, y2, x3, y3) != 0;
     }
 
     /**
@@ -138,15 +112,45 @@ public class Triangle implements TwoDShape {
      * an in-place procedure, and the current instance is modified.
      */
     public void snap() {
-        List<TwoDPoint> verticesCopy = new ArrayList<>(vertices);   // Return this in case vertices should not be modified
-        for (int i = 0; i < 3; i++) {
-            double xcoord = vertices.get(i).coordinates()[0]; // Get just decimal part of a double
-            double ycoord = vertices.get(i).coordinates()[1];
-            vertices.set(i, new TwoDPoint(Math.round(xcoord), Math.round(ycoord)));
+        snapIfValid();
+    }
+
+    /**
+     * Snaps this triangle as {@link #snap()} does.
+     *
+     * @return <code>true</code> if the triangle was moved, and <code>false</code> if it was left unchanged
+     */
+    boolean snapIfValid() {
+        // Retry if another thread moves this triangle between reading its position and publishing the snapped one
+        while (true) {
+            ShapeVertices current = vertices.get();
+            double[] snapped = new double[6];
+            for (int i = 0; i < snapped.length; i++)
+                snapped[i] = Math.round(current.array()[i]);
+            if (!isMember(snapped[0], snapped[1], snapped[2], snapped[3], snapped[4], snapped[5]))
+                return false;
+            if (vertices.compareAndSet(current, new ShapeVertices(snapped)))
+                return true;
         }
+    }
 
-        // Check that none of the vertices are equal
-        if (!isMember(vertices)) vertices = verticesCopy;
+    /**
+     * Moves the vertices of this triangle, in order, to the six already-snapped coordinates starting at
+     * <code>offset</code>, unless they would make this triangle invalid. The coordinates must be those of the snapshot
+     * <code>expected</code>, rounded; if another thread has moved this triangle since that snapshot was read, the new
+     * position is snapped instead, so the other thread's move is never overwritten.
+     *
+     * @return <code>true</code> if the triangle was moved, and <code>false</code> if it was left unchanged
+     */
+    boolean moveToSnapped(ShapeVertices expected, double[] snapped, int offset) {
+        boolean valid = isMember(snapped[offset], snapped[offset + 1], snapped[offset + 2], snapped[offset + 3],
+                                 snapped[offset + 4], snapped[offset + 5]);
+        if (valid && vertices.compareAndSet(expected,
+                                            new ShapeVertices(Arrays.copyOfRange(snapped, offset, offset + 6))))
+            return true;
+        if (vertices.get() == expected)
+            return false;
+        return snapIfValid();
     }
 
     /**
@@ -154,36 +158,71 @@ public class Triangle implements TwoDShape {
      */
     @Override
     public double area() {
-        // Get coordinates for the three points
-        double x1 = vertices.get(0).coordinates()[0];
-        double y1 = vertices.get(0).coordinates()[1];
-        double x2 = vertices.get(1).coordinates()[0];
-        double y2 = vertices.get(1).coordinates()[1];
-        double x3 = vertices.get(2).coordinates()[0];
-        double y3 = vertices.get(2).coordinates()[1];
-
-        // Get distances of the three lines in the triangle for Heron's formula
-        double a = Math.sqrt(Math.pow(x2 - x1, 2) + Math.pow(y2 - y1, 2));   // Distance of line from p1 to p2
-        double b = Math.sqrt(Math.pow(x3 - x2, 2) + Math.pow(y3 - y2, 2));   // Distance of line from p2 to p3
-        double c = Math.sqrt(Math.pow(x3 - x1, 2) + Math.pow(y3 - y1, 2));   // Distance of line from p1 to p3
-        double s = (a + b + c) / 2;
-        // Rounding to cut off at 2 decimal places
-        return Math.round(Math.sqrt(s * (s - a) * (s - b) * (s - c)) * 100.0) / 100.0;
+        ShapeMetrics.areaCalled(ShapeMetrics.TRIANGLE);
+        ShapeVertices v = vertices.get();
+        double area = v.area;
+        if (Double.isNaN(area)) {
+            ShapeMetrics.cacheMiss();
+            area = area(v.x(0), v.y(0), v.x(1), v.y(1), v.x(2), v.y(2));
+            v.area = area;
+        } else {
+            ShapeMetrics.cacheHit();
+        }
+        return area;
     }
 
     /**
      * @return the perimeter (i.e., the total length of the boundary) of this triangle
      */
     public double perimeter() {
-        double output = 0.0;
+        ShapeMetrics.perimeterCalled(ShapeMetrics.TRIANGLE);
+        ShapeVertices v = vertices.get();
+        double perimeter = v.perimeter;
+        if (Double.isNaN(perimeter)) {
+            ShapeMetrics.cacheMiss();
+            perimeter = perimeter(v.x(0), v.y(0), v.x(1), v.y(1), v.x(2), v.y(2));
+            v.perimeter = perimeter;
+        } else {
+            ShapeMetrics.cacheHit();
+        }
+        return perimeter;
+    }
 
-        // Get coordinates for the three points
-        double x1 = vertices.get(0).coordinates()[0];
-        double y1 = vertices.get(0).coordinates()[1];
-        double x2 = vertices.get(1).coordinates()[0];
-        double y2 = vertices.get(1).coordinates()[1];
-        double x3 = vertices.get(2).coordinates()[0];
-        double y3 = vertices.get(2).coordinates()[1];
+    /**
+     * @return the axis-aligned bounding box of this triangle as <code>{minX, minY, maxX, maxY}</code>
+     */
+    @Override
+    public double[] boundingBox() {
+        ShapeVertices v = vertices.get();
+        double[] box = v.boundingBox;
+        if (box == null) {
+            ShapeMetrics.cacheMiss();
+            box = v.extent();
+            v.boundingBox = box;
+        } else {
+            ShapeMetrics.cacheHit();
+        }
+        return box.clone();
+    }
+
+    /**
+     * Computes the area of the triangle with the three specified vertices, rounded to two decimal places.
+     *
+     * @return the area of the triangle formed by (x1, y1), (x2, y2) and (x3, y3)
+     */
+    static double area(double x1, double y1, double x2, double y2, double x3, double y3) {
+        // Half the magnitude of the cross product of two sides
+        // Rounding to cut off at 2 decimal places
+        return Math.round(Math.abs(Polygon.cross(x1, y1, x2, y2, x3, y3)) / 2 * 100.0) / 100.0;
+    }
+
+    /**
+     * Computes the perimeter of the triangle with the three specified vertices, rounded to two decimal places.
+     *
+     * @return the perimeter of the triangle formed by (x1, y1), (x2, y2) and (x3, y3)
+     */
+    static double perimeter(double x1, double y1, double x2, double y2, double x3, double y3) {
+        double output = 0.0;
 
         // Get distances of the three lines in the triangle
         output += Math.sqrt(Math.pow(x2 - x1, 2) + Math.pow(y2 - y1, 2));   // Distance of line from p1 to p2
@@ -196,12 +235,13 @@ public class Triangle implements TwoDShape {
     @Override
     public String toString() {
         // Get coordinates for the three points
-        double x1 = vertices.get(0).coordinates()[0];
-        double y1 = vertices.get(0).coordinates()[1];
-        double x2 = vertices.get(1).coordinates()[0];
-        double y2 = vertices.get(1).coordinates()[1];
-        double x3 = vertices.get(2).coordinates()[0];
-        double y3 = vertices.get(2).coordinates()[1];
+        ShapeVertices v = vertices.get();
+        double x1 = v.x(0);
+        double y1 = v.y(0);
+        double x2 = v.x(1);
+        double y2 = v.y(1);
+        double x3 = v.x(2);
+        double y3 = v.y(2);
 
         return "Triangle[(" + x1 + ", " + y1 + "), (" + x2 + ", " + y2 + "), " +
                 "(" + x3 + ", " + y3 + ")]";
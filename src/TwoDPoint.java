@@ -6,7 +6,7 @@ import java.util.ArrayList;
  * exactly two doubles specifying its <code>x</code> and <code>y</code> values.
  */
 public class TwoDPoint implements Point {
-    private double x, y;
+    private final double x, y;
 
     public TwoDPoint(double x, double y) {
         this.x = x;
@@ -21,6 +21,42 @@ public class TwoDPoint implements Point {
         return new double[]{x, y};
     }
 
+    @Override
+    public double coordinate(int index) {
+        switch (index) {
+            case 0: return x;
+            case 1: return y;
+            default: throw new IndexOutOfBoundsException("Index " + index + " out of bounds for a two-dimensional point");
+        }
+    }
+
+    @Override
+    public double x() { return x; }
+
+    @Override
+    public double y() { return y; }
+
+    /**
+     * @return zero, since a two-dimensional point always lies on the x-y plane. {@link #coordinate(int)} still rejects
+     * index 2, as a two-dimensional point has only the two coordinates of {@link #coordinates()}.
+     */
+    @Override
+    public double z() { return 0.0; }
+
+    /**
+     * Returns a point with the specified coordinates. If {@link PointInterner} is enabled and both coordinates are
+     * integer values, the shared instance for those coordinates is returned instead of a new one.
+     *
+     * @param x the x-value of the point.
+     * @param y the y-value of the point.
+     * @return a two-dimensional point at (x, y).
+     */
+    public static TwoDPoint of(double x, double y) {
+        if (PointInterner.isEnabled() && PointInterner.isInternable(x, y))
+            return PointInterner.intern(x, y);
+        return new TwoDPoint(x, y);
+    }
+
     /**
      * Returns a list of <code>TwoDPoint</code>s based on the specified array of doubles. A valid argument must always
      * be an even number of doubles so that every pair can be used to form a single <code>TwoDPoint</code> to be added
@@ -36,14 +72,14 @@ public class TwoDPoint implements Point {
 
         List<TwoDPoint> output = new ArrayList<>(coordinates.length / 2);
         for (int i = 0; i < coordinates.length; i += 2)
-            output.add(new TwoDPoint(coordinates[i], coordinates[i + 1]));
+            output.add(of(coordinates[i], coordinates[i + 1]));
 
         return output;
     }
 
     @Override
     public double distanceFromOrigin() {
-        return Math.sqrt(Math.pow(x, 2) + Math.pow(y, 2));
+        return Math.sqrt(x * x + y * y);
     }
 
     @Override
@@ -56,6 +92,12 @@ public class TwoDPoint implements Point {
         if (o == this) return true;
         if (!(o instanceof TwoDPoint)) return false;
         TwoDPoint point = (TwoDPoint) o;
-        return point.coordinates()[0] == this.coordinates()[0] && point.coordinates()[1] == this.coordinates()[1];
+        return point.x == this.x && point.y == this.y;
+    }
+
+    @Override
+    public int hashCode() {
+        // Adding zero turns -0.0 into 0.0, which equals treats as the same coordinate
+        return 31 * Double.hashCode(x + 0.0) + Double.hashCode(y + 0.0);
     }
 }
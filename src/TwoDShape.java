@@ -23,8 +23,26 @@ public interface TwoDShape extends Positionable, Comparable<TwoDShape> {
 
     double area();
 
+    /**
+     * Computes the axis-aligned bounding box of this shape. By default this is the extent of the points in
+     * {@link #getPosition()}; shapes that extend beyond their position points, such as circles, override it.
+     *
+     * @return the bounding box as <code>{minX, minY, maxX, maxY}</code>
+     */
+    default double[] boundingBox() {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (Point p : getPosition()) {
+            minX = Math.min(minX, p.x());
+            minY = Math.min(minY, p.y());
+            maxX = Math.max(maxX, p.x());
+            maxY = Math.max(maxY, p.y());
+        }
+        return new double[]{minX, minY, maxX, maxY};
+    }
+
     @Override
     default int compareTo(TwoDShape o) {
-        return (int) Math.floor(this.area() - o.area());
+        return Double.compare(this.area(), o.area());
     }
 }
\ No newline at end of file
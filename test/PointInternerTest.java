@@ -0,0 +1,40 @@
+/**
+ * Regression checks for {@link PointInterner}, run as a plain program. A failed check throws an
+ * {@link AssertionError}. The table is made small, unless <code>-DpointInterner.capacity</code> is given, so that the
+ * checks overfill it.
+ */
+public class PointInternerTest {
+
+    public static void main(String[] args) {
+        // Must be set before PointInterner is first used, since the table size is read when the class is initialized
+        if (System.getProperty("pointInterner.capacity") == null)
+            System.setProperty("pointInterner.capacity", "16");
+        PointInterner.setEnabled(true);
+        try {
+            overfilledTableEvictsWithinBounds();
+        } finally {
+            PointInterner.setEnabled(false);
+            PointInterner.clear();
+        }
+        System.out.println("PointInternerTest: all checks passed");
+    }
+
+    /** Interning far more points than the table holds must evict into the home slot, never past the table. */
+    static void overfilledTableEvictsWithinBounds() {
+        PointInterner.clear();
+        int side = 2000;
+        for (int x = -side / 2; x < side / 2; x++) {
+            for (int y = -side / 2; y < side / 2; y++) {
+                TwoDPoint point = TwoDPoint.of(x, y);
+                check(point.x() == x && point.y() == y, point.toString());
+            }
+        }
+        check(PointInterner.misses() > PointInterner.capacity(), "misses " + PointInterner.misses());
+        check(TwoDPoint.of(3, 4) == TwoDPoint.of(3, 4), "a point just interned must be shared");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,37 @@
+import java.util.Arrays;
+
+/**
+ * Regression checks for {@link Polygon}'s canonical vertex order, run as a plain program. A failed check throws an
+ * {@link AssertionError}.
+ */
+public class PolygonTest {
+
+    public static void main(String[] args) {
+        collinearVerticesOnLastRay();
+        collinearVerticesOnFirstAndLastRays();
+        System.out.println("PolygonTest: all checks passed");
+    }
+
+    /** (0,0), (1,0), (2,0) lie on the ray of least slope, which must be walked back farthest first. */
+    static void collinearVerticesOnLastRay() {
+        Polygon polygon = new Polygon(0, 0, 1, 0, 2, 0, 1, 2);
+        check(Arrays.equals(polygon.coordinates(), new double[]{0, 0, 1, 2, 2, 0, 1, 0}),
+              Arrays.toString(polygon.coordinates()));
+        check(polygon.area() == 2.0, "area " + polygon.area());
+        check(polygon.perimeter() == 6.47, "perimeter " + polygon.perimeter());
+    }
+
+    /** A square with an extra vertex on its left side (the first ray) and on its bottom side (the last ray). */
+    static void collinearVerticesOnFirstAndLastRays() {
+        Polygon polygon = new Polygon(2, 0, 0, 1, 0, 0, 1, 0, 2, 2, 0, 2);
+        check(Arrays.equals(polygon.coordinates(), new double[]{0, 0, 0, 1, 0, 2, 2, 2, 2, 0, 1, 0}),
+              Arrays.toString(polygon.coordinates()));
+        check(polygon.area() == 4.0, "area " + polygon.area());
+        check(polygon.perimeter() == 8.0, "perimeter " + polygon.perimeter());
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}